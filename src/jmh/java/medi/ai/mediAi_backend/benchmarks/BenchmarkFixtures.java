@@ -0,0 +1,69 @@
+package medi.ai.mediAi_backend.benchmarks;
+
+import medi.ai.mediAi_backend.service.ReportUpload;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Shared inputs for the benchmarks. Report JSON comes from the checked-in files in
+ * src/jmh/resources/fixtures; PDFs are generated deterministically (fixed seed) so
+ * every run renders exactly the same document.
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() { }
+
+    static String reportJson(String name) {
+        try (InputStream in = BenchmarkFixtures.class.getResourceAsStream("/fixtures/" + name + ".json")) {
+            if (in == null) throw new IllegalArgumentException("No fixture " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** A lab-report-like PDF: a header plus a table of test rows on every page. */
+    static ReportUpload labReportPdf(int pages) {
+        Random random = new Random(pages);
+        try (PDDocument doc = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                doc.addPage(page);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    cs.beginText();
+                    cs.setFont(PDType1Font.HELVETICA_BOLD, 14);
+                    cs.newLineAtOffset(50, 790);
+                    cs.showText("Synthetic Diagnostics Lab - Page " + (p + 1));
+                    cs.setFont(PDType1Font.HELVETICA, 10);
+                    for (int row = 0; row < 40; row++) {
+                        cs.newLineAtOffset(0, -18);
+                        double low = 1 + random.nextInt(50);
+                        cs.showText(String.format("Test %02d-%02d      %.1f      mg/dL      %.1f - %.1f",
+                                p, row, low + random.nextDouble() * 40, low, low + 30));
+                    }
+                    cs.endText();
+                    for (int row = 0; row <= 40; row++) {
+                        float y = 776 - row * 18;
+                        cs.moveTo(45, y);
+                        cs.lineTo(550, y);
+                    }
+                    cs.stroke();
+                }
+            }
+            doc.save(out);
+            return new ReportUpload(out.toByteArray(), "application/pdf", "synthetic-" + pages + ".pdf");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package medi.ai.mediAi_backend.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import medi.ai.mediAi_backend.service.ChatCompletionRequest;
+import medi.ai.mediAi_backend.service.ImagePreprocessor;
+import medi.ai.mediAi_backend.service.PdfPageRenderer;
+import medi.ai.mediAi_backend.service.RenderFixtures;
+import medi.ai.mediAi_backend.service.RenderedPage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and serializing the chat-completions body for pre-rendered pages.
+ * {@code mapPayload} is the original Map + data-URL + Jackson approach, kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatPayloadBenchmark {
+
+    @Param({"1", "10", "30"})
+    public int pages;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private List<RenderedPage> rendered;
+    private String systemPrompt;
+
+    @Setup
+    public void setUp() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            rendered = RenderFixtures.renderer(executor, ImagePreprocessor.Settings.OFF,
+                            RenderFixtures.render(72, PdfPageRenderer.Format.PNG, 4, false))
+                    .render(BenchmarkFixtures.labReportPdf(pages));
+        } finally {
+            executor.shutdown();
+        }
+        systemPrompt = BenchmarkFixtures.reportJson("report-small");
+    }
+
+    @Benchmark
+    public void streamedPayload(Blackhole bh) {
+        List<ChatCompletionRequest.Part> parts = new ArrayList<>();
+        parts.add(ChatCompletionRequest.Part.text("Extract the report"));
+        rendered.forEach(p -> parts.add(ChatCompletionRequest.Part.image(p.getMimeType(), p.getBytes())));
+        ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o-mini", 2000).system(systemPrompt).user(parts);
+
+        request.toDataBuffers(DefaultDataBufferFactory.sharedInstance).doOnNext(buffer -> {
+            bh.consume(buffer.readableByteCount());
+            DataBufferUtils.release(buffer);
+        }).blockLast();
+    }
+
+    @Benchmark
+    public byte[] mapPayload() throws Exception {
+        List<Object> contentBlocks = new ArrayList<>();
+        contentBlocks.add(Map.of("type", "text", "text", "Extract the report"));
+        for (RenderedPage page : rendered) {
+            String dataUrl = "data:image/png;base64," + Base64.getEncoder().encodeToString(page.getBytes());
+            contentBlocks.add(Map.of("type", "image_url", "image_url", Map.of("url", dataUrl)));
+        }
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("model", "gpt-4o-mini");
+        payload.put("messages", List.of(
+                Map.of("role", "system", "content", systemPrompt),
+                Map.of("role", "user", "content", contentBlocks)));
+        payload.put("max_tokens", 2000);
+        return mapper.writeValueAsBytes(payload);
+    }
+}
@@ -0,0 +1,35 @@
+package medi.ai.mediAi_backend.benchmarks;
+
+import medi.ai.mediAi_backend.util.LabStatusCalculator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status enrichment of a whole report (parse, evaluate every test, serialize).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LabStatusBenchmark {
+
+    @Param({"report-small", "report-large", "report-nested"})
+    public String fixture;
+
+    private String json;
+    private LabStatusCalculator calculator;
+
+    @Setup
+    public void setUp() {
+        json = BenchmarkFixtures.reportJson(fixture);
+        calculator = new LabStatusCalculator();
+    }
+
+    @Benchmark
+    public String addStatuses() throws Exception {
+        return calculator.addStatuses(json);
+    }
+}
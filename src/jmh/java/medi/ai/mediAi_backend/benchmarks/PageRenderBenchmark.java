@@ -0,0 +1,59 @@
+package medi.ai.mediAi_backend.benchmarks;
+
+import medi.ai.mediAi_backend.service.ImagePreprocessor;
+import medi.ai.mediAi_backend.service.PdfPageRenderer;
+import medi.ai.mediAi_backend.service.RenderFixtures;
+import medi.ai.mediAi_backend.service.RenderedPage;
+import medi.ai.mediAi_backend.service.ReportUpload;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render + encode of a whole PDF, as done by pdfToImageAndProcess before the model call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PageRenderBenchmark {
+
+    @Param({"10"})
+    public int pages;
+
+    @Param({"72", "110"})
+    public float dpi;
+
+    @Param({"PNG", "GRAY_PNG", "JPEG"})
+    public PdfPageRenderer.Format format;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private ExecutorService executor;
+    private PdfPageRenderer renderer;
+    private ReportUpload pdf;
+
+    @Setup
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        renderer = RenderFixtures.renderer(executor, ImagePreprocessor.Settings.OFF,
+                RenderFixtures.render(dpi, format, parallelism, false));
+        pdf = BenchmarkFixtures.labReportPdf(pages);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public List<RenderedPage> render() throws Exception {
+        return renderer.render(pdf);
+    }
+}
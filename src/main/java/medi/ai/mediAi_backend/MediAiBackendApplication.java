@@ -2,8 +2,10 @@ package medi.ai.mediAi_backend;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class MediAiBackendApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,73 @@
+package medi.ai.mediAi_backend.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import medi.ai.mediAi_backend.service.ExtractionCache;
+import medi.ai.mediAi_backend.service.FindingsCache;
+import medi.ai.mediAi_backend.service.OpenAiCircuitBreaker;
+import medi.ai.mediAi_backend.service.OpenAiScheduler;
+import medi.ai.mediAi_backend.service.ReportJobService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Gauges and counters read from components that keep their own state.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder openAiSchedulerMetrics(OpenAiScheduler scheduler) {
+        return registry -> {
+            Gauge.builder("openai.scheduler.limit", scheduler, OpenAiScheduler::getConcurrencyLimit)
+                    .description("Current AIMD concurrency limit").register(registry);
+            Gauge.builder("openai.scheduler.in_flight", scheduler, OpenAiScheduler::getInFlight)
+                    .description("OpenAI calls currently running").register(registry);
+            Gauge.builder("openai.scheduler.queued", scheduler, OpenAiScheduler::getQueued)
+                    .description("OpenAI calls waiting for admission").register(registry);
+            FunctionCounter.builder("openai.retries", scheduler, OpenAiScheduler::getRetries)
+                    .description("OpenAI calls re-queued after an overload or connection error").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder openAiCircuitBreakerMetrics(OpenAiCircuitBreaker breaker) {
+        return registry -> {
+            Gauge.builder("openai.circuit.state", breaker, b -> b.getState().ordinal())
+                    .description("OpenAI circuit breaker state: 0 closed, 1 open, 2 half-open").register(registry);
+            FunctionCounter.builder("openai.circuit.rejected", breaker, OpenAiCircuitBreaker::getRejected)
+                    .description("OpenAI calls rejected while the circuit was open").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder extractionCacheMetrics(ExtractionCache cache) {
+        return registry -> {
+            for (String result : new String[]{"hits", "diskHits", "misses", "coalesced"}) {
+                FunctionCounter.builder("report.extraction.cache", cache, c -> c.stats().get(result))
+                        .description("Extraction cache lookups by result")
+                        .tag("result", result)
+                        .register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder findingsCacheMetrics(FindingsCache cache) {
+        return registry -> {
+            for (String result : new String[]{"hits", "misses", "coalesced"}) {
+                FunctionCounter.builder("report.findings.cache", cache, c -> c.stats().get(result))
+                        .description("Findings cache lookups by result")
+                        .tag("result", result)
+                        .register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder reportJobMetrics(ReportJobService jobs) {
+        return registry -> Gauge.builder("report.jobs.in_flight", jobs, ReportJobService::getInFlight)
+                .description("Reports currently being processed").register(registry);
+    }
+}
@@ -0,0 +1,68 @@
+package medi.ai.mediAi_backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker pool for the blocking stages of a report job (PDF load/render/encode).
+ * The model calls themselves are non-blocking and do not occupy these threads.
+ * The queue is bounded by the admission limit, so it can never grow past the
+ * number of jobs ReportJobService lets in.
+ */
+@Configuration
+public class ReportJobConfig {
+    @Value("${app.jobs.workers:4}")
+    private int workers;
+
+    @Value("${app.jobs.max-in-flight:100}")
+    private int maxInFlight;
+
+    @Value("${app.render.pool-size:0}")
+    private int renderPoolSize;
+
+    @Bean(name = "reportJobExecutor", destroyMethod = "shutdown")
+    public ThreadPoolExecutor reportJobExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "report-job-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return new ThreadPoolExecutor(workers, workers,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxInFlight),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Shared pool for parallel page rendering. Its size is the global cap on
+     * page rasters being rendered at once across all jobs (0 = one per core).
+     */
+    @Bean(name = "pageRenderExecutor", destroyMethod = "shutdown")
+    public ExecutorService pageRenderExecutor() {
+        int size = renderPoolSize > 0 ? renderPoolSize : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, r -> {
+            Thread t = new Thread(r, "page-render-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Bean(name = "reportJobScheduler", destroyMethod = "dispose")
+    public Scheduler reportJobScheduler(ThreadPoolExecutor reportJobExecutor) {
+        return Schedulers.fromExecutorService(reportJobExecutor, "report-job");
+    }
+}
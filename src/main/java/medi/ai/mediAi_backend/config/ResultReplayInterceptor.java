@@ -0,0 +1,42 @@
+package medi.ai.mediAi_backend.config;
+
+import medi.ai.mediAi_backend.service.ReportPublisher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Replays the latest report state to the subscribing session when a client subscribes to
+ * /medicalReportTopic/{userId}.
+ * Runs after the broker has handled the SUBSCRIBE, so the subscription is registered
+ * before the replayed message is sent (a SessionSubscribeEvent listener could race it).
+ */
+@Component
+public class ResultReplayInterceptor implements ExecutorChannelInterceptor {
+
+    // the publisher depends on the messaging template, which is built from this channel's configuration
+    private final ObjectProvider<ReportPublisher> publisher;
+
+    public ResultReplayInterceptor(ObjectProvider<ReportPublisher> publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        if (ex != null || !(handler instanceof AbstractBrokerMessageHandler)) return;
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.SUBSCRIBE) return;
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null || !destination.startsWith(ReportPublisher.TOPIC_PREFIX)) return;
+        String userId = destination.substring(ReportPublisher.TOPIC_PREFIX.length());
+        if (!userId.isEmpty()) {
+            publisher.getObject().replay(userId, SimpMessageHeaderAccessor.getSessionId(message.getHeaders()),
+                    SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()));
+        }
+    }
+}
@@ -1,17 +1,36 @@
 package medi.ai.mediAi_backend.controller;
 
 import lombok.RequiredArgsConstructor;
+import medi.ai.mediAi_backend.service.JobRejectedException;
+import medi.ai.mediAi_backend.service.ReportBatch;
+import medi.ai.mediAi_backend.service.ReportBatchService;
+import medi.ai.mediAi_backend.service.ReportJob;
+import medi.ai.mediAi_backend.service.ReportJobService;
 import medi.ai.mediAi_backend.service.ReportProcessingService;
+import medi.ai.mediAi_backend.service.ReportResultStore;
+import medi.ai.mediAi_backend.service.ReportUpload;
+import medi.ai.mediAi_backend.service.UploadSpool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
- * Upload endpoint: returns immediate ack and starts background processing.
+ * Upload endpoint: returns immediate ack (with a job id) and starts background processing.
  */
 
 @CrossOrigin(origins = {
@@ -24,21 +43,148 @@ import java.util.UUID;
 public class ReportController {
 
     private final ReportProcessingService reportProcessingService;
+    private final ReportJobService reportJobService;
+    private final UploadSpool uploadSpool;
+    private final ReportResultStore reportResultStore;
+    private final ReportBatchService reportBatchService;
+
+    @Value("${app.batch.max-files:50}")
+    private int maxBatchFiles;
+
+    @Value("${app.batch.events-timeout:PT30M}")
+    private Duration batchEventsTimeout;
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public Map<String, String> uploadReport(@RequestPart("file") MultipartFile file,
-                                            @RequestParam(value = "userId", required = false) String userId) {
+    public ResponseEntity<Map<String, String>> uploadReport(@RequestPart("file") MultipartFile file,
+                                                            @RequestParam(value = "userId", required = false) String userId) throws IOException {
         if (file == null || file.isEmpty()) {
-            return Map.of("error", "file missing");
+            return ResponseEntity.ok(Map.of("error", "file missing"));
         }
 
         if (!StringUtils.hasText(userId)) {
             userId = UUID.randomUUID().toString();
         }
 
-        reportProcessingService.processReportAsync(file, userId);
+        ReportJob job;
+        ReportUpload upload = uploadSpool.spool(file);
+        try {
+            job = reportProcessingService.processReportAsync(upload, userId);
+        } catch (JobRejectedException e) {
+            upload.close();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of("error", "server_busy", "message", e.getMessage()));
+        }
+
+        // immediate ACK to frontend (includes userId so frontend can subscribe, jobId for polling)
+        return ResponseEntity.accepted()
+                .body(Map.of("message", "Processing started", "userId", userId, "jobId", job.getId()));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> jobStatus(@PathVariable String jobId) {
+        return reportJobService.find(jobId)
+                .map(job -> ResponseEntity.ok(job.toView()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "job not found")));
+    }
+
+    /**
+     * Latest pushed state (PARTIAL, FINAL or ERROR) for clients that missed the STOMP message,
+     * across all of the user's jobs; see /results/{userId}/{jobId} for a particular upload.
+     */
+    @GetMapping("/results/{userId}")
+    public ResponseEntity<Map<String, Object>> latestResult(@PathVariable String userId) {
+        return reportResultStore.latest(userId)
+                .map(result -> ResponseEntity.ok(result.toView()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "result not found")));
+    }
+
+    /** Latest pushed state of one upload, by the jobId returned from /upload. */
+    @GetMapping("/results/{userId}/{jobId}")
+    public ResponseEntity<Map<String, Object>> jobResult(@PathVariable String userId, @PathVariable String jobId) {
+        return reportResultStore.get(userId, jobId)
+                .map(result -> ResponseEntity.ok(result.toView()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "result not found")));
+    }
+
+    /**
+     * Many reports in one request. mode=interactive runs each file through the regular pipeline;
+     * mode=deferred sends the extractions through the OpenAI Batch API (cheaper, results within hours).
+     * Each file's result is published under its resultId; progress goes to the userId topic
+     * and to /batch/{batchId}/events.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> uploadBatch(@RequestPart("files") List<MultipartFile> files,
+                                                           @RequestParam(value = "userId", required = false) String userId,
+                                                           @RequestParam(value = "mode", defaultValue = "interactive") String mode) throws IOException {
+        List<MultipartFile> nonEmpty = files == null ? List.of() : files.stream().filter(f -> !f.isEmpty()).toList();
+        if (nonEmpty.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "files missing"));
+        }
+        if (nonEmpty.size() > maxBatchFiles) {
+            return ResponseEntity.badRequest().body(Map.of("error", "too many files", "maxFiles", maxBatchFiles));
+        }
+        ReportBatch.Mode batchMode;
+        try {
+            batchMode = ReportBatch.Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "unknown mode", "mode", mode));
+        }
+
+        if (!StringUtils.hasText(userId)) {
+            userId = UUID.randomUUID().toString();
+        }
+
+        List<ReportUpload> uploads = new ArrayList<>(nonEmpty.size());
+        ReportBatch batch;
+        try {
+            for (MultipartFile file : nonEmpty) {
+                uploads.add(uploadSpool.spool(file));
+            }
+            batch = reportBatchService.submit(uploads, userId, batchMode);
+        } catch (JobRejectedException e) {
+            uploads.forEach(ReportUpload::close);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of("error", "server_busy", "message", e.getMessage()));
+        } catch (IOException | RuntimeException e) {
+            uploads.forEach(ReportUpload::close);
+            throw e;
+        }
+
+        return ResponseEntity.accepted().body(batch.toView());
+    }
+
+    @GetMapping("/batch/{batchId}")
+    public ResponseEntity<Map<String, Object>> batchStatus(@PathVariable String batchId) {
+        return reportBatchService.find(batchId)
+                .map(batch -> ResponseEntity.ok(batch.toView()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "batch not found")));
+    }
+
+    /** Server-sent events: the current status, then one "progress" event per file status change. */
+    @GetMapping(value = "/batch/{batchId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> batchEvents(@PathVariable String batchId) throws IOException {
+        ReportBatch batch = reportBatchService.find(batchId).orElse(null);
+        if (batch == null) {
+            return ResponseEntity.notFound().build();
+        }
+        SseEmitter emitter = new SseEmitter(batchEventsTimeout.toMillis());
+        Consumer<Map<String, Object>> listener = event -> {
+            try {
+                emitter.send(SseEmitter.event().name("progress").data(event));
+                if (batch.isFinished()) emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+            }
+        };
+        batch.addListener(listener);
+        emitter.onCompletion(() -> batch.removeListener(listener));
+        emitter.onTimeout(() -> batch.removeListener(listener));
+        emitter.onError(e -> batch.removeListener(listener));
 
-        // immediate ACK to frontend (includes userId so frontend can subscribe)
-        return Map.of("message", "Processing completed", "userId", userId);
+        emitter.send(SseEmitter.event().name("status").data(batch.toView()));
+        if (batch.isFinished()) emitter.complete();
+        return ResponseEntity.ok(emitter);
     }
 }
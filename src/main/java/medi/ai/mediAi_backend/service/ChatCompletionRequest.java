@@ -0,0 +1,283 @@
+package medi.ai.mediAi_backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Chat-completions request body that is written as a stream instead of being
+ * materialized as a Map and serialized in one piece.
+ * Images are kept as their raw (compressed) bytes and base64-encoded chunk by
+ * chunk while the body is written, so no base64 String, data URL or full JSON
+ * copy of the document ever exists on the heap. The body is pull-based: a chunk
+ * is only encoded when the HTTP client asks for more, and it can be re-written
+ * on retry because image sources are re-opened.
+ */
+public class ChatCompletionRequest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Raw bytes per streamed chunk; a multiple of 3 so base64 chunks concatenate without padding. */
+    public static final int DEFAULT_CHUNK_SIZE = 48 * 1024;
+
+    @Getter
+    private final String model;
+    private final int maxTokens;
+    private final Map<String, Object> options = new LinkedHashMap<>();
+    private final List<Message> messages = new ArrayList<>();
+    private long textChars;
+    private int images;
+
+    public ChatCompletionRequest(String model, int maxTokens) {
+        this.model = model;
+        this.maxTokens = maxTokens;
+    }
+
+    /** Adds a system message; blank prompts are skipped. */
+    public ChatCompletionRequest system(String content) {
+        if (content != null && !content.isBlank()) {
+            messages.add(new Message("system", content, null));
+            textChars += content.length();
+        }
+        return this;
+    }
+
+    public ChatCompletionRequest user(String content) {
+        messages.add(new Message("user", content, null));
+        textChars += content == null ? 0 : content.length();
+        return this;
+    }
+
+    public ChatCompletionRequest user(List<Part> parts) {
+        messages.add(new Message("user", null, parts));
+        for (Part part : parts) {
+            if (part.isImage()) images++;
+            else textChars += part.text == null ? 0 : part.text.length();
+        }
+        return this;
+    }
+
+    /** Extra top-level field (e.g. response_format), serialized with Jackson. */
+    public ChatCompletionRequest option(String name, Object value) {
+        options.put(name, value);
+        return this;
+    }
+
+    /**
+     * Rough upper estimate of the tokens this call consumes (prompt + completion), used for
+     * tokens/min budgeting: ~4 characters per text token, a high-detail page image is ~800 tokens.
+     */
+    public int estimateTokens() {
+        return (int) Math.min(Integer.MAX_VALUE, textChars / 4 + images * 800L + maxTokens);
+    }
+
+    /** A piece of multi-part user content: text or an image read from a re-openable source. */
+    public static final class Part {
+        private final String text;
+        private final String mimeType;
+        private final Callable<InputStream> source;
+
+        private Part(String text, String mimeType, Callable<InputStream> source) {
+            this.text = text;
+            this.mimeType = mimeType;
+            this.source = source;
+        }
+
+        public static Part text(String text) {
+            return new Part(text, null, null);
+        }
+
+        public static Part image(String mimeType, byte[] bytes) {
+            return new Part(null, mimeType, () -> new ByteArrayInputStream(bytes));
+        }
+
+        public static Part image(String mimeType, Callable<InputStream> source) {
+            return new Part(null, mimeType, source);
+        }
+
+        boolean isImage() {
+            return source != null;
+        }
+    }
+
+    private record Message(String role, String content, List<Part> parts) { }
+
+    // --- Writing ---
+
+    /**
+     * Streams the body as DataBuffers of at most roughly {@code chunkSize * 4 / 3} bytes each.
+     */
+    public Flux<DataBuffer> toDataBuffers(DataBufferFactory factory, int chunkSize) {
+        if (chunkSize % 3 != 0) throw new IllegalArgumentException("chunkSize must be a multiple of 3");
+        return Flux.defer(() -> Flux.fromIterable(segments()))
+                .concatMap(segment -> segment instanceof Part part
+                        ? base64Chunks(part, factory, chunkSize)
+                        : Mono.fromSupplier(() -> factory.wrap((byte[]) segment)));
+    }
+
+    public Flux<DataBuffer> toDataBuffers(DataBufferFactory factory) {
+        return toDataBuffers(factory, DEFAULT_CHUNK_SIZE);
+    }
+
+    /** Blocking variant, e.g. for writing JSONL files. */
+    public void writeTo(OutputStream out) throws IOException {
+        for (Object segment : segments()) {
+            if (segment instanceof Part part) {
+                try (InputStream in = openSource(part);
+                     OutputStream b64 = Base64.getEncoder().wrap(new NonClosingOutputStream(out))) {
+                    in.transferTo(b64);
+                }
+            } else {
+                out.write((byte[]) segment);
+            }
+        }
+    }
+
+    private static Flux<DataBuffer> base64Chunks(Part part, DataBufferFactory factory, int chunkSize) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return Flux.using(() -> openSource(part),
+                in -> Flux.<DataBuffer>generate(sink -> {
+                    try {
+                        byte[] chunk = in.readNBytes(chunkSize);
+                        if (chunk.length == 0) {
+                            sink.complete();
+                            return;
+                        }
+                        byte[] encoded = encoder.encode(chunk);
+                        sink.next(factory.allocateBuffer(encoded.length).write(encoded));
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                }),
+                in -> {
+                    try {
+                        in.close();
+                    } catch (IOException ignored) { }
+                });
+    }
+
+    private static InputStream openSource(Part part) throws IOException {
+        try {
+            return part.source.call();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Cannot open image source", e);
+        }
+    }
+
+    /**
+     * Splits the body into raw JSON byte segments and image parts whose base64
+     * payload is produced while writing.
+     */
+    private List<Object> segments() {
+        List<Object> segments = new ArrayList<>();
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+
+        raw(json, "{\"model\":");
+        value(json, model);
+        raw(json, ",\"max_tokens\":" + maxTokens);
+        options.forEach((name, value) -> {
+            raw(json, ",");
+            value(json, name);
+            raw(json, ":");
+            value(json, value);
+        });
+        raw(json, ",\"messages\":[");
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (i > 0) raw(json, ",");
+            raw(json, "{\"role\":");
+            value(json, message.role());
+            raw(json, ",\"content\":");
+            if (message.parts() == null) {
+                value(json, message.content());
+            } else {
+                raw(json, "[");
+                for (int j = 0; j < message.parts().size(); j++) {
+                    Part part = message.parts().get(j);
+                    if (j > 0) raw(json, ",");
+                    if (part.isImage()) {
+                        String mime = escaped(part.mimeType);
+                        raw(json, "{\"type\":\"image_url\",\"image_url\":{\"url\":\"data:" + mime + ";base64,");
+                        segments.add(json.toByteArray());
+                        json.reset();
+                        segments.add(part);
+                        raw(json, "\"}}");
+                    } else {
+                        raw(json, "{\"type\":\"text\",\"text\":");
+                        value(json, part.text);
+                        raw(json, "}");
+                    }
+                }
+                raw(json, "]");
+            }
+            raw(json, "}");
+        }
+        raw(json, "]}");
+        segments.add(json.toByteArray());
+        return segments;
+    }
+
+    private static void raw(ByteArrayOutputStream out, String s) {
+        out.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void value(ByteArrayOutputStream out, Object value) {
+        try {
+            out.writeBytes(MAPPER.writeValueAsBytes(value));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String escaped(String s) {
+        try {
+            String quoted = MAPPER.writeValueAsString(s == null ? "application/octet-stream" : s);
+            return quoted.substring(1, quoted.length() - 1);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class NonClosingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+
+        NonClosingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.flush();
+        }
+    }
+}
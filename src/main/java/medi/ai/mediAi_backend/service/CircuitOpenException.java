@@ -0,0 +1,10 @@
+package medi.ai.mediAi_backend.service;
+
+/**
+ * Thrown instead of calling OpenAI while {@link OpenAiCircuitBreaker} is open.
+ */
+public class CircuitOpenException extends RuntimeException {
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
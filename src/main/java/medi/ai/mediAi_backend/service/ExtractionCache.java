@@ -0,0 +1,191 @@
+package medi.ai.mediAi_backend.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of extraction results, keyed by the SHA-256 of the uploaded bytes
+ * plus a hash of everything else the extraction depends on (prompts, model, render and
+ * preprocess settings; see {@link #key}), so a config change is not answered from the cache.
+ * <ul>
+ *   <li>memory tier: LRU bounded by entry count, entries expire after the TTL</li>
+ *   <li>disk tier (optional): one file per hash, survives restarts</li>
+ *   <li>in-flight coalescing: a second upload of the same bytes attaches to the running extraction</li>
+ * </ul>
+ * Failed extractions are never cached.
+ */
+@Component
+public class ExtractionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractionCache.class);
+
+    @Value("${app.cache.extraction.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${app.cache.extraction.ttl:PT24H}")
+    private Duration ttl;
+
+    @Value("${app.cache.extraction.dir:}")
+    private String dir;
+
+    private Path diskDir;
+    private final Map<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Mono<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private record Entry(String value, Instant createdAt) { }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!StringUtils.hasText(dir)) return;
+        diskDir = Path.of(dir);
+        Files.createDirectories(diskDir);
+        // drop expired files left over from previous runs
+        Instant cutoff = Instant.now().minus(ttl);
+        try (Stream<Path> files = Files.list(diskDir)) {
+            files.filter(p -> isExpired(p, cutoff)).forEach(p -> p.toFile().delete());
+        }
+        log.info("Extraction cache disk tier at {}", diskDir.toAbsolutePath());
+    }
+
+    /**
+     * Cache key for an upload: its hash and a short hash of the extraction inputs.
+     * Only hex digits and '-', so it can be used as a file name.
+     */
+    public static String key(String uploadSha256, String... settings) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String setting : settings) {
+                digest.update(setting.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return uploadSha256 + "-" + HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached extraction for the key, joins an in-flight one, or runs the loader.
+     */
+    public Mono<String> getOrLoad(String cacheKey, Supplier<Mono<String>> loader) {
+        return Mono.defer(() -> {
+            String cached = getFromMemory(cacheKey);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Mono.just(cached);
+            }
+            boolean[] created = {false};
+            Mono<String> shared = inFlight.computeIfAbsent(cacheKey, key -> {
+                created[0] = true;
+                return readFromDisk(key)
+                        .doOnNext(v -> {
+                            diskHits.incrementAndGet();
+                            putInMemory(key, v);
+                        })
+                        .switchIfEmpty(Mono.defer(() -> {
+                            misses.incrementAndGet();
+                            return loader.get().doOnNext(v -> store(key, v));
+                        }))
+                        .doFinally(signal -> inFlight.remove(key))
+                        .cache();
+            });
+            if (!created[0]) {
+                coalesced.incrementAndGet();
+                log.info("Coalesced upload {} onto in-flight extraction", cacheKey);
+            }
+            return shared;
+        });
+    }
+
+    public Map<String, Long> stats() {
+        return Map.of("hits", hits.get(), "diskHits", diskHits.get(),
+                "misses", misses.get(), "coalesced", coalesced.get());
+    }
+
+    private synchronized String getFromMemory(String key) {
+        Entry e = memory.get(key);
+        if (e == null) return null;
+        if (e.createdAt().isBefore(Instant.now().minus(ttl))) {
+            memory.remove(key);
+            return null;
+        }
+        return e.value();
+    }
+
+    private synchronized void putInMemory(String key, String value) {
+        memory.put(key, new Entry(value, Instant.now()));
+        var it = memory.entrySet().iterator();
+        while (memory.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private void store(String key, String value) {
+        putInMemory(key, value);
+        if (diskDir == null) return;
+        Mono.fromRunnable(() -> writeToDisk(key, value))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+    }
+
+    private Mono<String> readFromDisk(String key) {
+        if (diskDir == null) return Mono.empty();
+        return Mono.fromCallable(() -> {
+                    Path file = diskDir.resolve(key + ".json");
+                    if (!Files.exists(file) || isExpired(file, Instant.now().minus(ttl))) return null;
+                    return Files.readString(file, StandardCharsets.UTF_8);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.warn("Could not read cached extraction {}: {}", key, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private void writeToDisk(String key, String value) {
+        try {
+            Path tmp = Files.createTempFile(diskDir, key, ".tmp");
+            Files.writeString(tmp, value, StandardCharsets.UTF_8);
+            Files.move(tmp, diskDir.resolve(key + ".json"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not persist cached extraction {}: {}", key, e.getMessage());
+        }
+    }
+
+    private static boolean isExpired(Path file, Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant().isBefore(cutoff);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package medi.ai.mediAi_backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * overall_finding arrays keyed by the report's lab-status signature
+ * (see {@link medi.ai.mediAi_backend.util.OverallFindings#signature}).
+ * <ul>
+ *   <li>LRU bounded by entry count</li>
+ *   <li>warm-start file (optional): loaded on startup, written on shutdown</li>
+ *   <li>in-flight coalescing: reports with the same signature share one model call</li>
+ * </ul>
+ */
+@Component
+public class FindingsCache {
+
+    private static final Logger log = LoggerFactory.getLogger(FindingsCache.class);
+
+    @Value("${app.cache.findings.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cache.findings.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${app.cache.findings.file:}")
+    private String file;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, String> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Mono<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        if (!enabled || !StringUtils.hasText(file) || !Files.exists(Path.of(file))) return;
+        try {
+            Map<String, String> saved = mapper.readValue(Path.of(file).toFile(), new TypeReference<LinkedHashMap<String, String>>() { });
+            saved.forEach(this::put);
+            log.info("Loaded {} cached findings from {}", saved.size(), file);
+        } catch (IOException e) {
+            log.warn("Could not load findings cache from {}: {}", file, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void save() {
+        if (!enabled || !StringUtils.hasText(file)) return;
+        Map<String, String> snapshot;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<>(memory); // least recently used first, so reloading keeps the order
+        }
+        try {
+            Path target = Path.of(file).toAbsolutePath();
+            Files.createDirectories(target.getParent());
+            Path tmp = Files.createTempFile(target.getParent(), "findings", ".tmp");
+            mapper.writeValue(tmp.toFile(), snapshot);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved {} cached findings to {}", snapshot.size(), target);
+        } catch (IOException e) {
+            log.warn("Could not save findings cache to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the cached findings for the signature, joins an in-flight call, or runs the loader.
+     * Empty or failed loads are not cached.
+     */
+    public Mono<String> getOrLoad(String signature, Supplier<Mono<String>> loader) {
+        if (!enabled) return Mono.defer(loader);
+        return Mono.defer(() -> {
+            String cached = get(signature);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Mono.just(cached);
+            }
+            boolean[] created = {false};
+            Mono<String> shared = inFlight.computeIfAbsent(signature, key -> {
+                created[0] = true;
+                misses.incrementAndGet();
+                return loader.get()
+                        .doOnNext(v -> put(key, v))
+                        .doFinally(signal -> inFlight.remove(key))
+                        .cache();
+            });
+            if (!created[0]) coalesced.incrementAndGet();
+            return shared;
+        });
+    }
+
+    public Map<String, Long> stats() {
+        return Map.of("hits", hits.get(), "misses", misses.get(), "coalesced", coalesced.get());
+    }
+
+    private synchronized String get(String key) {
+        return memory.get(key);
+    }
+
+    private synchronized void put(String key, String value) {
+        memory.put(key, value);
+        var it = memory.entrySet().iterator();
+        while (memory.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package medi.ai.mediAi_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shrinks images before they are sent to the model:
+ * downscale to a maximum long edge, grayscale, crop uniform borders,
+ * and (for PDF pages) drop blank pages and exact repeats.
+ * A page only counts as a repeat when its prepared pixels are identical to an earlier page's:
+ * pages printed from the same lab template differ in a few digits, which any similarity
+ * threshold loose enough to absorb scanner noise also absorbs, losing patient results.
+ * Every step can be switched off under app.preprocess; with enabled=false nothing is touched.
+ * Deskewing is not done: crop only removes uniform margins.
+ */
+@Component
+public class ImagePreprocessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ImagePreprocessor.class);
+
+    /** Pixels darker than this count as ink for blank detection. */
+    private static final int INK_LUMA = 200;
+    /** A border row/column may vary by at most this much luma. */
+    private static final int BORDER_TOLERANCE = 24;
+    private static final int CROP_PADDING = 8;
+
+    /** app.preprocess.* */
+    @ConfigurationProperties("app.preprocess")
+    public record Settings(@DefaultValue("true") boolean enabled,
+                           @DefaultValue("1600") int maxLongEdge,
+                           @DefaultValue("true") boolean grayscale,
+                           @DefaultValue("true") boolean cropBorders,
+                           @DefaultValue("0.0001") double blankInkRatio,
+                           @DefaultValue("true") boolean dropDuplicates,
+                           @DefaultValue("0.85") float jpegQuality) {
+        /** Nothing is touched. */
+        public static final Settings OFF = new Settings(false, 0, false, false, 0, false, 0.85f);
+    }
+
+    private final PipelineMetrics metrics;
+    private final boolean enabled;
+    private final int maxLongEdge;
+    private final boolean grayscale;
+    private final boolean cropBorders;
+    private final double blankInkRatio;
+    private final boolean dropDuplicates;
+    private final float jpegQuality;
+
+    public ImagePreprocessor(PipelineMetrics metrics, Settings settings) {
+        this.metrics = metrics;
+        this.enabled = settings.enabled();
+        this.maxLongEdge = settings.maxLongEdge();
+        this.grayscale = settings.grayscale();
+        this.cropBorders = settings.cropBorders();
+        this.blankInkRatio = settings.blankInkRatio();
+        this.dropDuplicates = settings.dropDuplicates();
+        this.jpegQuality = settings.jpegQuality();
+    }
+
+    /** The settings that change what the model is sent, for cache keys. */
+    public String cacheKey() {
+        if (!enabled) return "preprocess=off";
+        return "preprocess=" + maxLongEdge + "," + grayscale + "," + cropBorders + "," + blankInkRatio
+                + "," + dropDuplicates + "," + jpegQuality;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** A re-encoded upload. */
+    public record PreparedImage(byte[] bytes, String mimeType) { }
+
+    /** Size and SHA-256 of the pixels of a prepared page. */
+    public record Fingerprint(int width, int height, byte[] digest) { }
+
+    /**
+     * Downscales, converts and crops an uploaded photo/scan and re-encodes it as JPEG.
+     * @return null when disabled, the format is unreadable, or the result would not be smaller
+     */
+    public PreparedImage prepareUpload(ReportUpload upload) throws IOException {
+        if (!enabled) return null;
+        BufferedImage image = read(upload);
+        if (image == null) return null;
+        BufferedImage prepared = prepare(image);
+        if (prepared.getColorModel().hasAlpha()) {
+            prepared = redraw(prepared, prepared.getWidth(), prepared.getHeight(), BufferedImage.TYPE_INT_RGB);
+        }
+        byte[] bytes = jpeg(prepared, jpegQuality);
+        long saved = upload.getSize() - bytes.length;
+        if (saved <= 0) return null;
+        metrics.preprocessBytesSaved("upload", "prepare", saved);
+        log.info("Preprocessed upload {}: {}x{} -> {} KB (saved {} KB)", upload.getFilename(),
+                image.getWidth(), image.getHeight(), bytes.length / 1024, saved / 1024);
+        return new PreparedImage(bytes, "image/jpeg");
+    }
+
+    /**
+     * Decodes with source subsampling so the raster is at most about twice max-long-edge:
+     * a 12 MP photo never becomes a 48 MB int raster just to be scaled down afterwards.
+     */
+    private BufferedImage read(ReportUpload upload) throws IOException {
+        try (InputStream in = upload.getInputStream();
+             ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+            if (readers == null || !readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int longEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                if (maxLongEdge > 0 && longEdge > maxLongEdge * 2) {
+                    int factor = longEdge / (maxLongEdge * 2);
+                    param.setSourceSubsampling(factor, factor, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** Grayscale, border crop and downscale, in that order; the input is returned when all are off. */
+    public BufferedImage prepare(BufferedImage image) {
+        if (!enabled) return image;
+        BufferedImage out = image;
+        if (grayscale && out.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+            out = redraw(out, out.getWidth(), out.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        }
+        if (cropBorders) {
+            out = cropUniformBorders(out);
+        }
+        int longEdge = Math.max(out.getWidth(), out.getHeight());
+        if (maxLongEdge > 0 && longEdge > maxLongEdge) {
+            out = downscale(out, (double) maxLongEdge / longEdge);
+        }
+        return out;
+    }
+
+    public boolean detectsBlankPages() {
+        return enabled && blankInkRatio > 0;
+    }
+
+    /**
+     * True when less than blank-ink-ratio of the (sampled) pixels are dark. Callers only ask for
+     * pages without text: the default ratio (about 50 pixels of an A4 page at 72 dpi) is far
+     * below a single printed result row, so it only catches empty pages and scanner specks.
+     */
+    public boolean isBlank(BufferedImage image) {
+        if (!enabled || blankInkRatio <= 0) return false;
+        int step = Math.max(1, Math.min(image.getWidth(), image.getHeight()) / 400);
+        long ink = 0;
+        long total = 0;
+        for (int y = 0; y < image.getHeight(); y += step) {
+            for (int x = 0; x < image.getWidth(); x += step) {
+                if (luma(image.getRGB(x, y)) < INK_LUMA) ink++;
+                total++;
+            }
+        }
+        return ink < total * blankInkRatio;
+    }
+
+    public static Fingerprint fingerprint(BufferedImage image) {
+        MessageDigest digest = sha256();
+        int width = image.getWidth();
+        int[] row = new int[width];
+        ByteBuffer bytes = ByteBuffer.allocate(width * 4);
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            bytes.clear();
+            bytes.asIntBuffer().put(row);
+            digest.update(bytes.array());
+        }
+        return new Fingerprint(width, image.getHeight(), digest.digest());
+    }
+
+    /** Same size and identical pixels; any difference, however small, keeps both pages. */
+    static boolean isDuplicate(Fingerprint a, Fingerprint b) {
+        return a.width() == b.width() && a.height() == b.height() && MessageDigest.isEqual(a.digest(), b.digest());
+    }
+
+    /**
+     * What the page would have cost without {@link #prepare}, estimated from the encoded size
+     * scaled by the ratio of raw to prepared raster bytes (encoding it twice would double the encode time).
+     */
+    public static long unpreparedBytesEstimate(BufferedImage raw, BufferedImage prepared, long encodedBytes) {
+        double rawBytes = (double) raw.getWidth() * raw.getHeight() * bytesPerPixel(raw);
+        double preparedBytes = (double) prepared.getWidth() * prepared.getHeight() * bytesPerPixel(prepared);
+        return Math.round(encodedBytes * rawBytes / preparedBytes);
+    }
+
+    private static int bytesPerPixel(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_BYTE_GRAY ? 1 : 3;
+    }
+
+    /**
+     * Drops pages that repeat an earlier page exactly: images with identical pixels, text pages
+     * with identical text. Input and output are in page order.
+     */
+    public List<RenderedPage> dropDuplicates(List<RenderedPage> pages) {
+        if (!enabled || !dropDuplicates) return pages;
+        List<RenderedPage> kept = new ArrayList<>(pages.size());
+        List<Fingerprint> keptPrints = new ArrayList<>();
+        Set<String> keptTexts = new HashSet<>();
+        for (RenderedPage page : pages) {
+            boolean duplicate;
+            if (page.isText()) {
+                duplicate = !keptTexts.add(page.getText());
+            } else if (page.getFingerprint() != null) {
+                Fingerprint print = page.getFingerprint();
+                duplicate = keptPrints.stream().anyMatch(k -> isDuplicate(k, print));
+                if (!duplicate) keptPrints.add(print);
+            } else {
+                duplicate = false;
+            }
+            if (duplicate) {
+                log.debug("Dropping page {} as a duplicate", page.getPageIndex());
+                metrics.preprocessPageDropped("duplicate");
+                metrics.preprocessBytesSaved("pdf", "duplicate", page.getBytes().length);
+            } else {
+                kept.add(page);
+            }
+        }
+        return kept;
+    }
+
+    // --- image helpers ---
+
+    private static BufferedImage cropUniformBorders(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int top = 0;
+        while (top < h - 1 && isUniformRow(image, top)) top++;
+        int bottom = h - 1;
+        while (bottom > top && isUniformRow(image, bottom)) bottom--;
+        int left = 0;
+        while (left < w - 1 && isUniformColumn(image, left, top, bottom)) left++;
+        int right = w - 1;
+        while (right > left && isUniformColumn(image, right, top, bottom)) right--;
+
+        top = Math.max(0, top - CROP_PADDING);
+        left = Math.max(0, left - CROP_PADDING);
+        bottom = Math.min(h - 1, bottom + CROP_PADDING);
+        right = Math.min(w - 1, right + CROP_PADDING);
+        if (top == 0 && left == 0 && bottom == h - 1 && right == w - 1) return image;
+        if (bottom - top < 16 || right - left < 16) return image; // nothing but border: leave it to blank detection
+        return image.getSubimage(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    private static boolean isUniformRow(BufferedImage image, int y) {
+        int min = 255;
+        int max = 0;
+        for (int x = 0; x < image.getWidth(); x += 2) {
+            int l = luma(image.getRGB(x, y));
+            min = Math.min(min, l);
+            max = Math.max(max, l);
+            if (max - min > BORDER_TOLERANCE) return false;
+        }
+        return true;
+    }
+
+    private static boolean isUniformColumn(BufferedImage image, int x, int top, int bottom) {
+        int min = 255;
+        int max = 0;
+        for (int y = top; y <= bottom; y += 2) {
+            int l = luma(image.getRGB(x, y));
+            min = Math.min(min, l);
+            max = Math.max(max, l);
+            if (max - min > BORDER_TOLERANCE) return false;
+        }
+        return true;
+    }
+
+    /** Halves repeatedly, then one bilinear step, which keeps small text legible. */
+    private static BufferedImage downscale(BufferedImage image, double scale) {
+        int targetW = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int targetH = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage out = image;
+        while (out.getWidth() / 2 >= targetW && out.getHeight() / 2 >= targetH) {
+            out = redraw(out, out.getWidth() / 2, out.getHeight() / 2, imageType(out));
+        }
+        return out.getWidth() == targetW && out.getHeight() == targetH ? out : redraw(out, targetW, targetH, imageType(out));
+    }
+
+    private static BufferedImage redraw(BufferedImage src, int width, int height, int type) {
+        BufferedImage out = new BufferedImage(width, height, type);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setColor(Color.WHITE); // transparent areas become paper, not black
+            g.fillRect(0, 0, width, height);
+            g.drawImage(src, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static int imageType(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_BYTE_GRAY ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB;
+    }
+
+    private static int luma(int rgb) {
+        return (((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114) / 1000;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte[] jpeg(BufferedImage image, float quality) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(baos)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,16 @@
+package medi.ai.mediAi_backend.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown when the job queue is full and a new report cannot be admitted.
+ */
+@Getter
+public class JobRejectedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public JobRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -1,18 +1,34 @@
 package medi.ai.mediAi_backend.service;
 
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import lombok.RequiredArgsConstructor;
 import medi.ai.mediAi_backend.util.LabStatusCalculator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 @Service
+@RequiredArgsConstructor
 public class LabStatusService {
+    private static final Logger log = LoggerFactory.getLogger(LabStatusService.class);
+
+    private final PipelineMetrics metrics;
     private final LabStatusCalculator calculator = new LabStatusCalculator();
 
     public String enrichWithStatuses(String json) {
-        try {
-            return calculator.addStatuses(json);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return json; // fallback: return original
-        }
+        return metrics.timeStage("enrichment", () -> {
+            try {
+                return calculator.addStatuses(json);
+            } catch (Exception e) {
+                log.warn("Status enrichment failed, returning extraction unchanged", e);
+                metrics.fallback("enrichment");
+                return json; // fallback: return original
+            }
+        });
+    }
+
+    /** Adds the status to a single test entry, e.g. one parsed from a streamed response. */
+    public void enrichEntry(ArrayNode entry) {
+        calculator.enrichEntry(entry);
     }
 }
@@ -0,0 +1,60 @@
+package medi.ai.mediAi_backend.service;
+
+import lombok.Getter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Non-2xx response from the OpenAI API, with the status code and any Retry-After hint.
+ */
+@Getter
+public class OpenAiApiException extends RuntimeException {
+    private final int statusCode;
+    /** null when the response carried no Retry-After header. */
+    private final Duration retryAfter;
+
+    public OpenAiApiException(int statusCode, Duration retryAfter, String body) {
+        super("OpenAI API error " + statusCode + ": " + body);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /** 429 and 5xx mean the upstream is overloaded; everything else is our fault and not retried. */
+    public boolean isOverload() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    static Mono<Throwable> from(ClientResponse response) {
+        Duration retryAfter = retryAfter(response.headers().asHttpHeaders());
+        int status = response.statusCode().value();
+        return response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .map(body -> new OpenAiApiException(status, retryAfter, body));
+    }
+
+    static Duration retryAfter(HttpHeaders headers) {
+        String ms = headers.getFirst("retry-after-ms");
+        if (ms != null) {
+            try {
+                return Duration.ofMillis((long) Double.parseDouble(ms.trim()));
+            } catch (NumberFormatException ignored) { }
+        }
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null) return null;
+        try {
+            return Duration.ofMillis((long) (Double.parseDouble(value.trim()) * 1000));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (Exception ignored) {
+                return null;
+            }
+        }
+    }
+}
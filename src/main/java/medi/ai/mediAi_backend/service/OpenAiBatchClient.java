@@ -0,0 +1,273 @@
+package medi.ai.mediAi_backend.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * OpenAI Batch API: chat-completion requests are written to a JSONL input file, uploaded,
+ * run as one batch within the completion window, and the output file is parsed back by custom_id.
+ * Batch calls do not go through {@link OpenAiScheduler}; they have their own (separate) quota.
+ */
+@Component
+public class OpenAiBatchClient {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenAiBatchClient.class);
+    private static final Set<String> TERMINAL = Set.of("completed", "failed", "expired", "cancelled");
+    private static final String ENDPOINT = "/v1/chat/completions";
+
+    private final WebClient openAiWebClient;
+    private final UploadSpool uploadSpool;
+    private final PipelineMetrics metrics;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${app.openai.api-key}")
+    private String openAiApiKey;
+
+    @Value("${app.batch.deferred.poll-interval:PT30S}")
+    private Duration pollInterval;
+
+    @Value("${app.batch.deferred.completion-window:24h}")
+    private String completionWindow;
+
+    @Value("${app.batch.deferred.max-wait:PT25H}")
+    private Duration maxWait;
+
+    public OpenAiBatchClient(@Qualifier("openAiWebClient") WebClient openAiWebClient,
+                             UploadSpool uploadSpool, PipelineMetrics metrics) {
+        this.openAiWebClient = openAiWebClient;
+        this.uploadSpool = uploadSpool;
+        this.metrics = metrics;
+    }
+
+    /** Model output per custom_id, and the reason for every request that produced none. */
+    public record Results(Map<String, String> contents, Map<String, String> errors) { }
+
+    /**
+     * Runs the requests as one batch and completes when the batch reaches a terminal state.
+     * Each request is written to the input file as it arrives and only its custom_id is kept,
+     * so rendered page images are not all held until the file is complete. Without requests
+     * nothing is uploaded. Requests missing from the output (failed, expired) are reported in
+     * {@link Results#errors()}.
+     */
+    public Mono<Results> execute(Flux<Map.Entry<String, ChatCompletionRequest>> requests) {
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> Files.createTempFile(uploadSpool.getDir(), "batch-", ".jsonl"))
+                        .subscribeOn(Schedulers.boundedElastic()),
+                input -> writeInput(input, requests).flatMap(customIds -> {
+                    if (customIds.isEmpty()) return Mono.just(new Results(Map.of(), Map.of()));
+                    long start = System.nanoTime();
+                    return uploadFile(input)
+                            .flatMap(this::createBatch)
+                            .flatMap(this::awaitTerminal)
+                            .flatMap(batch -> collectResults(batch, customIds))
+                            .doFinally(signal -> metrics.recordStage("batch_wait", System.nanoTime() - start));
+                }),
+                input -> Mono.fromRunnable(() -> delete(input)).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * One line per request: {"custom_id":...,"method":"POST","url":"/v1/chat/completions","body":{...}}.
+     * Requests are taken one at a time, and the file is closed before the custom_ids are emitted.
+     */
+    Mono<Set<String>> writeInput(Path input, Flux<Map.Entry<String, ChatCompletionRequest>> requests) {
+        return Mono.using(
+                        () -> Files.newOutputStream(input),
+                        out -> requests
+                                .publishOn(Schedulers.boundedElastic(), 1)
+                                .<String>handle((entry, sink) -> {
+                                    try {
+                                        writeLine(out, entry.getKey(), entry.getValue());
+                                        sink.next(entry.getKey());
+                                    } catch (IOException e) {
+                                        sink.error(e);
+                                    }
+                                })
+                                .collect(Collectors.toSet()),
+                        OpenAiBatchClient::close)
+                .doOnNext(customIds -> {
+                    try {
+                        metrics.payloadBytes("batch", Files.size(input));
+                    } catch (IOException e) {
+                        log.debug("Could not size {}: {}", input, e.getMessage());
+                    }
+                });
+    }
+
+    private void writeLine(OutputStream out, String customId, ChatCompletionRequest request) throws IOException {
+        out.write(("{\"custom_id\":" + mapper.writeValueAsString(customId)
+                + ",\"method\":\"POST\",\"url\":\"" + ENDPOINT + "\",\"body\":").getBytes(StandardCharsets.UTF_8));
+        request.writeTo(out);
+        out.write("}\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mono<String> uploadFile(Path input) {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("purpose", "batch");
+        body.part("file", new FileSystemResource(input));
+        return openAiWebClient.post()
+                .uri("/files")
+                .headers(h -> h.setBearerAuth(openAiApiKey))
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, OpenAiApiException::from)
+                .bodyToMono(FileObject.class)
+                .map(file -> file.id);
+    }
+
+    private Mono<Batch> createBatch(String inputFileId) {
+        return openAiWebClient.post()
+                .uri("/batches")
+                .headers(h -> h.setBearerAuth(openAiApiKey))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("input_file_id", inputFileId, "endpoint", ENDPOINT, "completion_window", completionWindow))
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, OpenAiApiException::from)
+                .bodyToMono(Batch.class)
+                .doOnNext(batch -> log.info("Created OpenAI batch {} from file {}", batch.id, inputFileId));
+    }
+
+    private Mono<Batch> awaitTerminal(Batch created) {
+        return Flux.interval(Duration.ZERO, pollInterval)
+                // ticks that arrive while a poll is still running are skipped
+                .onBackpressureDrop()
+                // a failed poll is retried on the next tick instead of failing the batch
+                .concatMap(tick -> getBatch(created.id)
+                        .onErrorResume(e -> {
+                            log.warn("Polling batch {} failed: {}", created.id, e.getMessage());
+                            return Mono.empty();
+                        }))
+                .filter(batch -> TERMINAL.contains(batch.status))
+                .next()
+                .timeout(maxWait)
+                .doOnNext(batch -> log.info("OpenAI batch {} finished with status {}", batch.id, batch.status));
+    }
+
+    private Mono<Batch> getBatch(String batchId) {
+        return openAiWebClient.get()
+                .uri("/batches/{id}", batchId)
+                .headers(h -> h.setBearerAuth(openAiApiKey))
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, OpenAiApiException::from)
+                .bodyToMono(Batch.class);
+    }
+
+    private Mono<Results> collectResults(Batch batch, Set<String> customIds) {
+        Map<String, String> contents = new HashMap<>();
+        Map<String, String> errors = new HashMap<>();
+        return readLines(batch.output_file_id, contents, errors)
+                .then(readLines(batch.error_file_id, contents, errors))
+                .then(Mono.fromSupplier(() -> {
+                    for (String id : customIds) {
+                        if (!contents.containsKey(id)) errors.putIfAbsent(id, "no result (batch " + batch.status + ")");
+                    }
+                    return new Results(contents, errors);
+                }));
+    }
+
+    /** Output files can be large, so they are streamed to disk and read line by line. */
+    private Mono<Void> readLines(String fileId, Map<String, String> contents, Map<String, String> errors) {
+        if (fileId == null) return Mono.empty();
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> Files.createTempFile(uploadSpool.getDir(), "batch-", ".out"))
+                        .subscribeOn(Schedulers.boundedElastic()),
+                file -> {
+                    Flux<DataBuffer> content = openAiWebClient.get()
+                            .uri("/files/{id}/content", fileId)
+                            .headers(h -> h.setBearerAuth(openAiApiKey))
+                            .retrieve()
+                            .onStatus(HttpStatusCode::isError, OpenAiApiException::from)
+                            .bodyToFlux(DataBuffer.class);
+                    return DataBufferUtils.write(content, file)
+                            .then(Mono.fromCallable(() -> {
+                                parse(file, contents, errors);
+                                return true;
+                            }).subscribeOn(Schedulers.boundedElastic()))
+                            .then();
+                },
+                file -> Mono.fromRunnable(() -> delete(file)).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    void parse(Path file, Map<String, String> contents, Map<String, String> errors) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JsonNode node = mapper.readTree(line);
+                String id = node.path("custom_id").asText(null);
+                if (id == null) continue;
+                JsonNode response = node.path("response");
+                int status = response.path("status_code").asInt(0);
+                JsonNode content = response.path("body").path("choices").path(0).path("message").path("content");
+                if (status == 200 && content.isTextual()) {
+                    contents.put(id, content.asText());
+                } else if (node.hasNonNull("error")) {
+                    errors.put(id, node.path("error").path("message").asText("batch request failed"));
+                } else {
+                    errors.put(id, "http_" + status + ": "
+                            + response.path("body").path("error").path("message").asText("no content"));
+                }
+            }
+        }
+    }
+
+    private static void close(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("Could not close batch input: {}", e.getMessage());
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    // --- DTOs ---
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class FileObject {
+        public String id;
+    }
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class Batch {
+        public String id;
+        public String status;
+        public String output_file_id;
+        public String error_file_id;
+    }
+}
@@ -0,0 +1,149 @@
+package medi.ai.mediAi_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count-based circuit breaker in front of every OpenAI call (after the scheduler's retries).
+ * <ul>
+ *   <li>CLOSED: outcomes of the last {@code window} calls are kept; once at least
+ *       {@code minimumCalls} are recorded and the failure rate reaches the threshold, it opens</li>
+ *   <li>OPEN: calls fail fast with {@link CircuitOpenException} for {@code openDuration}</li>
+ *   <li>HALF_OPEN: a single trial call is let through; success closes, failure re-opens</li>
+ * </ul>
+ * Only upstream degradation counts as failure: timeouts, 5xx, 429 that outlasted the retries and
+ * connection errors. A 4xx caused by the request itself does not, nor does a
+ * {@link QueueTimeoutException}: a call that timed out in the local queue never reached OpenAI.
+ */
+@Component
+public class OpenAiCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenAiCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final boolean[] outcomes;
+    private int count;
+    private int next;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public OpenAiCircuitBreaker(@Value("${app.openai.circuit-breaker.failure-rate:0.5}") double failureRateThreshold,
+                                @Value("${app.openai.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                                @Value("${app.openai.circuit-breaker.window:20}") int window,
+                                @Value("${app.openai.circuit-breaker.open-duration:PT30S}") Duration openDuration) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openNanos = openDuration.toNanos();
+        this.outcomes = new boolean[Math.max(1, window)];
+    }
+
+    /** @return false when the call must not be made (the rejection is counted) */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+            log.info("OpenAI circuit half-open, letting a trial call through");
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            log.info("OpenAI circuit closed after a successful trial call");
+            state = State.CLOSED;
+            reset();
+            return;
+        }
+        record(false);
+    }
+
+    /** Records the call's error; errors that say nothing about the upstream only release a trial slot. */
+    public synchronized void onError(Throwable error) {
+        if (!isUpstreamFailure(error)) {
+            onIgnored();
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open("trial call failed: " + error.getMessage());
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && count >= minimumCalls && failures >= failureRateThreshold * count) {
+            open(String.format("%d of the last %d calls failed", failures, count));
+        }
+    }
+
+    /** The call ended without an outcome (cancelled, e.g. a hedge that lost). */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    static boolean isUpstreamFailure(Throwable error) {
+        if (error instanceof OpenAiApiException api) {
+            return api.getStatusCode() >= 500 || api.getStatusCode() == 429;
+        }
+        if (error instanceof QueueTimeoutException) {
+            return false;
+        }
+        return error instanceof TimeoutException || error instanceof WebClientRequestException;
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        trialInFlight = false;
+        reset();
+        log.warn("OpenAI circuit opened for {} s: {}", Duration.ofNanos(openNanos).toSeconds(), reason);
+    }
+
+    private void record(boolean failure) {
+        if (count == outcomes.length) {
+            if (outcomes[next]) failures--;
+        } else {
+            count++;
+        }
+        outcomes[next] = failure;
+        if (failure) failures++;
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void reset() {
+        count = 0;
+        next = 0;
+        failures = 0;
+    }
+}
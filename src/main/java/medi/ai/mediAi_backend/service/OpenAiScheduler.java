@@ -0,0 +1,344 @@
+package medi.ai.mediAi_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Shared admission point for every OpenAI call.
+ * <ul>
+ *   <li>token buckets for requests/min and (estimated) tokens/min</li>
+ *   <li>AIMD concurrency limit: +1/limit per success, x{@code decrease-factor} on 429/5xx
+ *       (at most once per second, so one burst of failures counts once)</li>
+ *   <li>Retry-After pauses all dispatching until the given time</li>
+ *   <li>priority queue: INTERACTIVE work is dispatched before BULK, FIFO within a priority</li>
+ *   <li>overload errors and connection failures are re-queued (with jittered backoff when the
+ *       server gave no Retry-After); a stream is only retried if nothing was emitted yet</li>
+ * </ul>
+ * The priority is taken from the Reactor context (see {@link #withPriority}), INTERACTIVE by default.
+ */
+@Component
+public class OpenAiScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenAiScheduler.class);
+
+    public enum Priority { INTERACTIVE, BULK }
+
+    private static final String PRIORITY_KEY = OpenAiScheduler.class.getName() + ".priority";
+
+    private final TokenBucket requestBucket;
+    private final TokenBucket tokenBucket;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double decreaseFactor;
+    private final int maxRetries;
+    private final Scheduler timer = Schedulers.parallel();
+
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong retries = new AtomicLong();
+    private double limit;
+    private int inFlight;
+    private long pausedUntil;
+    private long lastDecrease;
+    private boolean drainScheduled;
+
+    public OpenAiScheduler(@Value("${app.openai.limits.requests-per-minute:500}") int requestsPerMinute,
+                           @Value("${app.openai.limits.tokens-per-minute:200000}") int tokensPerMinute,
+                           @Value("${app.openai.limits.burst-seconds:10}") int burstSeconds,
+                           @Value("${app.openai.limits.initial-concurrency:8}") int initialConcurrency,
+                           @Value("${app.openai.limits.min-concurrency:1}") int minConcurrency,
+                           @Value("${app.openai.limits.max-concurrency:32}") int maxConcurrency,
+                           @Value("${app.openai.limits.decrease-factor:0.7}") double decreaseFactor,
+                           @Value("${app.openai.limits.max-retries:3}") int maxRetries) {
+        this.requestBucket = new TokenBucket(requestsPerMinute, burstSeconds);
+        this.tokenBucket = new TokenBucket(tokensPerMinute, burstSeconds);
+        this.limit = initialConcurrency;
+        this.minLimit = minConcurrency;
+        this.maxLimit = maxConcurrency;
+        this.decreaseFactor = decreaseFactor;
+        this.maxRetries = maxRetries;
+    }
+
+    /** Reactor context that marks the calls made downstream as the given priority. */
+    public static Context withPriority(Priority priority) {
+        return Context.of(PRIORITY_KEY, priority);
+    }
+
+    /**
+     * Runs the call once it is admitted.
+     * @param estimatedTokens prompt + max completion tokens, charged to the tokens/min bucket
+     */
+    public <T> Flux<T> schedule(int estimatedTokens, Supplier<? extends Flux<T>> call) {
+        return Flux.deferContextual(ctx -> Flux.<T>create(sink -> {
+            Task<T> task = new Task<>(ctx.getOrDefault(PRIORITY_KEY, Priority.INTERACTIVE),
+                    sequence.incrementAndGet(), estimatedTokens, call, sink);
+            sink.onCancel(task::cancel);
+            enqueue(task);
+        }));
+    }
+
+    /** Gives back the difference between the estimate and the tokens actually used. */
+    public void recordUsage(int estimatedTokens, int actualTokens) {
+        if (actualTokens > 0 && actualTokens < estimatedTokens) {
+            tokenBucket.refund(estimatedTokens - actualTokens);
+        }
+    }
+
+    public synchronized double getConcurrencyLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    // --- Dispatching ---
+
+    private void enqueue(Task<?> task) {
+        synchronized (this) {
+            queue.add(task);
+        }
+        drain();
+    }
+
+    /**
+     * Serialized drain loop: a call made while another thread (or a re-entrant completion)
+     * is draining just makes that loop run once more, so tasks start in dispatch order.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            Task<?> next;
+            while ((next = pollReady()) != null) {
+                next.start();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private synchronized Task<?> pollReady() {
+        long wait = 0;
+        Task<?> ready = null;
+        while (!queue.isEmpty()) {
+            Task<?> head = queue.peek();
+            if (head.cancelled) {
+                queue.poll();
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            if (now < pausedUntil) {
+                wait = pausedUntil - now;
+                break;
+            }
+            if (inFlight >= Math.floor(limit)) break; // a completion will drain again
+            wait = Math.max(requestBucket.millisUntil(1), tokenBucket.millisUntil(head.tokens));
+            if (wait > 0) break;
+            requestBucket.take(1);
+            tokenBucket.take(head.tokens);
+            inFlight++;
+            ready = queue.poll();
+            ready.released.set(false);
+            break;
+        }
+        if (wait > 0 && !drainScheduled) {
+            drainScheduled = true;
+            timer.schedule(() -> {
+                synchronized (this) {
+                    drainScheduled = false;
+                }
+                drain();
+            }, wait, TimeUnit.MILLISECONDS);
+        }
+        return ready;
+    }
+
+    private void onSuccess(Task<?> task) {
+        if (!task.release()) return;
+        synchronized (this) {
+            inFlight--;
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        drain();
+    }
+
+    private void onError(Task<?> task, Throwable error) {
+        if (!task.release()) return;
+        boolean retry = false;
+        long delay = 0;
+        synchronized (this) {
+            inFlight--;
+            if (error instanceof OpenAiApiException api && api.isOverload()) {
+                long now = System.currentTimeMillis();
+                if (now - lastDecrease >= 1000) {
+                    limit = Math.max(minLimit, limit * decreaseFactor);
+                    lastDecrease = now;
+                    log.warn("OpenAI returned {}, concurrency limit lowered to {}", api.getStatusCode(), String.format("%.1f", limit));
+                }
+                if (api.getRetryAfter() != null) {
+                    pausedUntil = Math.max(pausedUntil, now + api.getRetryAfter().toMillis());
+                }
+                retry = true;
+                delay = api.getRetryAfter() != null ? 0 : backoff(task.attempt);
+            } else if (error instanceof WebClientRequestException) {
+                retry = true;
+                delay = backoff(task.attempt);
+            }
+            retry = retry && !task.emitted && !task.cancelled && task.attempt < maxRetries;
+        }
+        if (retry) {
+            task.attempt++;
+            // the finished attempt must not be disposed (or its slot released) by a cancel during the wait
+            task.running = null;
+            retries.incrementAndGet();
+            log.info("Retrying OpenAI call (attempt {}) in {} ms: {}", task.attempt, delay, error.getMessage());
+            timer.schedule(() -> enqueue(task), delay, TimeUnit.MILLISECONDS);
+        } else {
+            task.sink.error(error);
+        }
+        drain();
+    }
+
+    /** 2s, 4s, 8s ... capped at 10s, with +-25% jitter so retries do not line up. */
+    private static long backoff(int attempt) {
+        long base = Math.min(10_000, 2_000L << Math.min(attempt, 3));
+        return (long) (base * (0.75 + ThreadLocalRandom.current().nextDouble() * 0.5));
+    }
+
+    private final class Task<T> implements Comparable<Task<?>> {
+        final Priority priority;
+        final long seq;
+        final int tokens;
+        final Supplier<? extends Flux<T>> call;
+        final FluxSink<T> sink;
+        int attempt;
+        volatile boolean emitted;
+        volatile boolean cancelled;
+        volatile Disposable running;
+        /**
+         * False only while the task holds an in-flight slot (set when it is admitted), so completion
+         * and cancellation release a slot exactly once, and a queued or retry-waiting task releases none.
+         */
+        final AtomicBoolean released = new AtomicBoolean(true);
+
+        Task(Priority priority, long seq, int tokens, Supplier<? extends Flux<T>> call, FluxSink<T> sink) {
+            this.priority = priority;
+            this.seq = seq;
+            this.tokens = tokens;
+            this.call = call;
+            this.sink = sink;
+        }
+
+        boolean release() {
+            return released.compareAndSet(false, true);
+        }
+
+        void start() {
+            if (cancelled) {
+                releaseCancelled();
+                return;
+            }
+            Disposable d = Flux.defer(call).subscribe(
+                    value -> {
+                        emitted = true;
+                        sink.next(value);
+                    },
+                    error -> onError(this, error),
+                    () -> {
+                        onSuccess(this);
+                        sink.complete();
+                    });
+            running = d;
+            // cancelled while subscribing: cancel() may not have seen the subscription
+            if (cancelled) d.dispose();
+        }
+
+        void cancel() {
+            cancelled = true;
+            Disposable d = running;
+            if (d != null) d.dispose();
+            // no-op unless the task holds a slot; a queued task is skipped when it reaches the head
+            releaseCancelled();
+        }
+
+        private void releaseCancelled() {
+            if (!release()) return;
+            synchronized (OpenAiScheduler.this) {
+                inFlight--;
+            }
+            drain();
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+
+    /** Classic token bucket refilled continuously at perMinute / 60s, holding at most burstSeconds worth. */
+    static final class TokenBucket {
+        private final double perMilli;
+        private final double capacity;
+        private double available;
+        private long lastRefill = System.currentTimeMillis();
+
+        TokenBucket(int perMinute, int burstSeconds) {
+            this.perMilli = perMinute / 60_000.0;
+            this.capacity = Math.max(1, perMinute * burstSeconds / 60.0);
+            this.available = capacity;
+        }
+
+        synchronized long millisUntil(int amount) {
+            refill();
+            double needed = Math.min(amount, capacity) - available;
+            return needed <= 0 ? 0 : (long) Math.ceil(needed / perMilli);
+        }
+
+        synchronized void take(int amount) {
+            refill();
+            available -= Math.min(amount, capacity);
+        }
+
+        synchronized void refund(int amount) {
+            available = Math.min(capacity, available + amount);
+        }
+
+        private void refill() {
+            long now = System.currentTimeMillis();
+            available = Math.min(capacity, available + (now - lastRefill) * perMilli);
+            lastRefill = now;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OpenAiScheduler[limit=%.1f, inFlight=%d, queued=%d]", limit, inFlight, queue.size());
+    }
+}
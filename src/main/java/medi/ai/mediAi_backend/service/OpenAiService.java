@@ -1,33 +1,48 @@
 package medi.ai.mediAi_backend.service;
 
-import org.springframework.web.multipart.MultipartFile;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.PDFRenderer;
-
-
-
-import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import medi.ai.mediAi_backend.util.ExtractionMerger;
+import medi.ai.mediAi_backend.util.LatencyWindow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpStatus;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.util.retry.Retry;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.time.Duration;
 import java.util.*;
-import java.util.Base64;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 public class OpenAiService {
+    private static final Logger log = LoggerFactory.getLogger(OpenAiService.class);
+
     private final WebClient openAiWebClient;
+    private final Scheduler reportJobScheduler;
+    private final PdfPageRenderer pdfPageRenderer;
+    private final OpenAiScheduler openAiScheduler;
+    private final PipelineMetrics metrics;
+    private final ImagePreprocessor imagePreprocessor;
+    private final OpenAiCircuitBreaker circuitBreaker;
 
     @Value("${app.openai.api-key}")
     private String openAiApiKey;
@@ -35,128 +50,406 @@ public class OpenAiService {
     @Value("${app.openai.chat-model}")
     private String chatModel;
 
-    // --- Centralized helper with retry + exponential backoff ---
-    private ChatResponse makeChatCompletionCall(Map<String, Object> payload) {
+    @Value("${app.extraction.chunk-pages:0}")
+    private int chunkPages;
+
+    @Value("${app.extraction.chunk-concurrency:4}")
+    private int chunkConcurrency;
+
+    // Deadlines per logical call, including queueing in the scheduler and its retries
+    @Value("${app.openai.timeouts.extraction:PT90S}")
+    private Duration extractionTimeout;
+
+    @Value("${app.openai.timeouts.extraction-chunk:PT60S}")
+    private Duration extractionChunkTimeout;
+
+    @Value("${app.openai.timeouts.extraction-stream:PT120S}")
+    private Duration extractionStreamTimeout;
+
+    @Value("${app.openai.timeouts.findings:PT20S}")
+    private Duration findingsTimeout;
+
+    @Value("${app.openai.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    @Value("${app.openai.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${app.openai.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+
+    @Value("${app.openai.hedge.min-delay:PT1S}")
+    private Duration hedgeMinDelay;
+
+    private final LatencyWindow findingsLatency = new LatencyWindow(200);
+
+    private final ExtractionMerger extractionMerger = new ExtractionMerger();
+
+    private static final String TEXT_LAYER_NOTE = " Some pages are given as their extracted text instead of an image:"
+            + " one table row per line, columns separated by ' | '.";
+
+    private WebClient.ResponseSpec post(ChatCompletionRequest request, String callType) {
+        AtomicLong payloadBytes = new AtomicLong();
+        Flux<DataBuffer> body = request.toDataBuffers(DefaultDataBufferFactory.sharedInstance)
+                .doOnNext(buffer -> payloadBytes.addAndGet(buffer.readableByteCount()))
+                .doOnComplete(() -> metrics.payloadBytes(callType, payloadBytes.get()));
         return openAiWebClient.post()
                 .uri("/chat/completions")
                 .headers(h -> h.setBearerAuth(openAiApiKey))
-                .bodyValue(payload)
+                .contentType(MediaType.APPLICATION_JSON)
+                // streamed body: images are base64-encoded chunk by chunk as the client sends
+                .body(BodyInserters.fromDataBuffers(body))
                 .retrieve()
-                .onStatus(HttpStatus.TOO_MANY_REQUESTS::equals, resp ->
-                        resp.bodyToMono(String.class)
-                                .flatMap(body -> {
-                                    return reactor.core.publisher.Mono.error(
-                                            new RuntimeException("429 Too Many Requests: " + body)
-                                    );
-                                })
-                )
-                .bodyToMono(ChatResponse.class)
-                .retryWhen(
-                        Retry.backoff(3, Duration.ofSeconds(2)) // 3 retries: 2s, 4s, 8s
-                                .maxBackoff(Duration.ofSeconds(10))
-                                .filter(ex -> ex.getMessage() != null &&
-                                        (ex.getMessage().contains("429") ||
-                                                ex.getMessage().contains("5xx") ||
-                                                ex.getMessage().contains("502")))
-                )
-                .block();
-    }
-
-    public String generateOverallFinding(String enrichedJson, String systemPrompt) {
-        Map<String,Object> userMessage = Map.of(
-                "role", "user",
-                "content", "Here is the JSON report:\n" + enrichedJson + "\n\nAdd overall_finding as per instructions."
-        );
-
-        Map<String,Object> payload = new HashMap<>();
-        payload.put("model", chatModel);
-        payload.put("messages", List.of(
-                Map.of("role","system","content", systemPrompt),
-                userMessage
-        ));
-        payload.put("max_tokens", 1500);
-
-        ChatResponse resp = makeChatCompletionCall(payload);
+                // typed error with status + Retry-After, so the scheduler can back off properly
+                .onStatus(HttpStatusCode::isError, OpenAiApiException::from);
+    }
 
-        if (resp != null && resp.choices != null && !resp.choices.isEmpty() && resp.choices.get(0).message != null) {
-            return resp.choices.get(0).message.content;
-        }
-        return enrichedJson; // fallback
+    // --- Centralized helper: admission, retries and backoff are handled by OpenAiScheduler ---
+    private Mono<ChatResponse> makeChatCompletionCall(ChatCompletionRequest request, String callType) {
+        int estimatedTokens = request.estimateTokens();
+        return guarded(callType, estimatedTokens,
+                        () -> timed(callType, post(request, callType).bodyToMono(ChatResponse.class).flux()))
+                .singleOrEmpty()
+                .doOnNext(resp -> recordUsage(callType, estimatedTokens, resp.usage));
     }
 
-    // --- Vision: image ---
-    public String visionChatCompletion(String systemPrompt,
-                                       String userTextPrompt,
-                                       MultipartFile imageFile,
-                                       int maxTokens) throws IOException {
-        byte[] bytes = imageFile.getBytes();
-        String base64 = Base64.getEncoder().encodeToString(bytes);
-        String mime = Optional.ofNullable(imageFile.getContentType()).orElse("image/png");
-        String dataUrl = "data:" + mime + ";base64," + base64;
+    /**
+     * Schedules the call under its call type's deadline and the circuit breaker: while the circuit is
+     * open the call fails fast with {@link CircuitOpenException} instead of waiting on a degraded upstream.
+     */
+    private <T> Flux<T> guarded(String callType, int estimatedTokens, Supplier<? extends Flux<T>> call) {
+        return guarded(circuitBreaker, openAiScheduler, callType, timeoutFor(callType), estimatedTokens, call);
+    }
+
+    /**
+     * The deadline covers the whole call including its wait in the scheduler's queue, but only a call
+     * that was dispatched times out with a plain {@link TimeoutException}; one still queued fails with
+     * {@link QueueTimeoutException}, which the circuit breaker does not count against OpenAI.
+     */
+    static <T> Flux<T> guarded(OpenAiCircuitBreaker circuitBreaker, OpenAiScheduler scheduler, String callType,
+                               Duration deadline, int estimatedTokens, Supplier<? extends Flux<T>> call) {
+        return Flux.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Flux.error(new CircuitOpenException("OpenAI circuit is open, not calling " + callType));
+            }
+            AtomicBoolean dispatched = new AtomicBoolean();
+            Flux<T> scheduled = scheduler.schedule(estimatedTokens, () -> {
+                dispatched.set(true);
+                return call.get();
+            });
+            // a deadline for the whole call: Flux.timeout(Duration) would only bound the gap between stream chunks
+            return scheduled.takeUntilOther(Mono.delay(deadline).then(Mono.error(() -> dispatched.get()
+                            ? new TimeoutException(callType + " did not complete within " + deadline)
+                            : new QueueTimeoutException(callType + " was not dispatched within " + deadline))))
+                    .doOnComplete(circuitBreaker::onSuccess)
+                    .doOnError(circuitBreaker::onError)
+                    .doOnCancel(circuitBreaker::onIgnored);
+        });
+    }
+
+    private Duration timeoutFor(String callType) {
+        return switch (callType) {
+            case "extraction_chunk" -> extractionChunkTimeout;
+            case "extraction_stream" -> extractionStreamTimeout;
+            case "findings" -> findingsTimeout;
+            default -> extractionTimeout;
+        };
+    }
 
-        List<Object> contentBlocks = new ArrayList<>();
-        contentBlocks.add(Map.of("type", "text", "text", userTextPrompt));
-        contentBlocks.add(Map.of("type", "image_url", "image_url", Map.of("url", dataUrl)));
+    /**
+     * For the cheap text-only findings call: when the first request is still running after the
+     * configured percentile of recent findings latencies, a duplicate is sent and whichever answers
+     * first wins (the other is cancelled). No hedge while calls are queued in the scheduler or the
+     * circuit is not closed, so hedging never adds load to a saturated upstream.
+     */
+    private Mono<ChatResponse> hedgedCall(ChatCompletionRequest request, String callType) {
+        return Mono.defer(() -> {
+            // one sample per logical call: the winner's response time, or the elapsed time when cancelled,
+            // so slow primaries that lose to their hedge still count and the percentile does not drift down
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            Runnable record = () -> {
+                if (recorded.compareAndSet(false, true)) findingsLatency.record(System.nanoTime() - start);
+            };
+            Mono<ChatResponse> primary = makeChatCompletionCall(request, callType).doOnCancel(record);
+            Duration delay = hedgeEnabled ? findingsLatency.percentile(hedgePercentile, hedgeMinSamples) : null;
+            if (delay == null) {
+                return primary.doOnNext(resp -> record.run());
+            }
+            Duration hedgeDelay = delay.compareTo(hedgeMinDelay) < 0 ? hedgeMinDelay : delay;
+            Mono<ChatResponse> hedge = Mono.delay(hedgeDelay)
+                    .filter(tick -> openAiScheduler.getQueued() == 0 && circuitBreaker.getState() == OpenAiCircuitBreaker.State.CLOSED)
+                    .flatMap(tick -> {
+                        metrics.hedge(callType, "sent");
+                        return makeChatCompletionCall(request, callType)
+                                .doOnNext(resp -> metrics.hedge(callType, "won"));
+                    });
+            return Mono.firstWithValue(primary, hedge)
+                    .doOnNext(resp -> record.run())
+                    // neither produced a value: surface the primary's error (or complete empty) as an unhedged call would
+                    .onErrorResume(NoSuchElementException.class, e -> Exceptions.unwrapMultiple(e.getCause()).stream()
+                            .filter(cause -> !(cause instanceof NoSuchElementException))
+                            .findFirst()
+                            .map(Mono::<ChatResponse>error)
+                            .orElseGet(Mono::empty));
+        });
+    }
 
-        List<Map<String,Object>> messages = new ArrayList<>();
-        if (systemPrompt != null && !systemPrompt.isBlank()) {
-            messages.add(Map.of("role","system","content", systemPrompt));
+    private void recordUsage(String callType, int estimatedTokens, Usage usage) {
+        if (usage == null) {
+            return;
         }
-        messages.add(Map.of("role","user","content", contentBlocks));
+        metrics.tokens(callType, chatModel, usage.prompt_tokens, usage.completion_tokens);
+        if (usage.total_tokens != null) {
+            openAiScheduler.recordUsage(estimatedTokens, usage.total_tokens);
+        }
+    }
 
-        Map<String,Object> payload = new HashMap<>();
-        payload.put("model", chatModel);
-        payload.put("messages", messages);
-        payload.put("max_tokens", Math.min(maxTokens, 2000));
+    /** One latency sample per HTTP attempt; queueing in the scheduler is not included. */
+    private <T> Flux<T> timed(String callType, Flux<T> call) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                    .doOnComplete(() -> metrics.openAiCall(callType, chatModel, "success", System.nanoTime() - start))
+                    .doOnError(e -> metrics.openAiCall(callType, chatModel, outcome(e), System.nanoTime() - start))
+                    // deadline passed or a hedge won
+                    .doOnCancel(() -> metrics.openAiCall(callType, chatModel, "cancelled", System.nanoTime() - start));
+        });
+    }
 
-        ChatResponse resp = makeChatCompletionCall(payload);
+    private static String outcome(Throwable e) {
+        return e instanceof OpenAiApiException api ? "http_" + api.getStatusCode() : "error";
+    }
 
+    /**
+     * stream=true variant: emits the content deltas as the model generates them.
+     * The scheduler only retries a stream that failed before emitting anything.
+     */
+    private Flux<String> streamChatCompletionCall(ChatCompletionRequest request, String callType) {
+        request.option("stream", true);
+        // the final chunk then carries the usage block (with empty choices)
+        request.option("stream_options", Map.of("include_usage", true));
+        int estimatedTokens = request.estimateTokens();
+        return guarded(callType, estimatedTokens, () -> timed(callType, post(request, callType)
+                .bodyToFlux(SSE_TYPE)
+                .map(ServerSentEvent::data)
+                .takeWhile(data -> data != null && !"[DONE]".equals(data.trim()))
+                .concatMap(data -> {
+                    try {
+                        ChatChunk chunk = CHUNK_READER.readValue(data);
+                        recordUsage(callType, estimatedTokens, chunk.usage);
+                        if (chunk.choices == null || chunk.choices.isEmpty() || chunk.choices.get(0).delta == null) {
+                            return Mono.empty();
+                        }
+                        return Mono.justOrEmpty(chunk.choices.get(0).delta.content);
+                    } catch (Exception e) {
+                        return Mono.error(e);
+                    }
+                })));
+    }
+
+    private static Mono<String> firstChoiceContent(ChatResponse resp) {
         if (resp != null && resp.choices != null && !resp.choices.isEmpty() && resp.choices.get(0).message != null) {
-            return resp.choices.get(0).message.content;
+            return Mono.justOrEmpty(resp.choices.get(0).message.content);
         }
-        return null;
+        return Mono.empty();
+    }
+
+    public Mono<String> generateOverallFinding(String enrichedJson, String systemPrompt) {
+        ChatCompletionRequest request = new ChatCompletionRequest(chatModel, 1500)
+                .system(systemPrompt)
+                .user("Here is the JSON report:\n" + enrichedJson + "\n\nAdd overall_finding as per instructions.");
+
+        return hedgedCall(request, "findings")
+                .flatMap(OpenAiService::firstChoiceContent)
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    metrics.fallback("findings");
+                    return enrichedJson; // fallback
+                }));
+    }
+
+    /**
+     * Compact findings call: the input holds only demographics and abnormal tests and the
+     * response is constrained to {"overall_finding":[...]}, so test_summary is never regenerated.
+     */
+    public Mono<String> generateFindings(String compactJson, String systemPrompt) {
+        ChatCompletionRequest request = new ChatCompletionRequest(chatModel, 600)
+                .system(systemPrompt)
+                .user("Here are the patient details and abnormal results:\n" + compactJson)
+                .option("response_format", FINDINGS_RESPONSE_FORMAT);
+
+        return hedgedCall(request, "findings").flatMap(OpenAiService::firstChoiceContent);
     }
 
-    public String pdfToImageAndProcess(MultipartFile pdfFile, String systemPrompt, String userPrompt) throws Exception {
-        PDDocument doc = PDDocument.load(pdfFile.getInputStream());
-        PDFRenderer renderer = new PDFRenderer(doc);
+    // --- Vision: image ---
+    public Mono<String> visionChatCompletion(String systemPrompt,
+                                             String userTextPrompt,
+                                             ReportUpload imageFile,
+                                             int maxTokens) {
+        return imagePart(imageFile)
+                .map(image -> new ChatCompletionRequest(chatModel, Math.min(maxTokens, 2000))
+                        .system(systemPrompt)
+                        .user(List.of(ChatCompletionRequest.Part.text(userTextPrompt), image)))
+                .flatMap(request -> makeChatCompletionCall(request, "extraction"))
+                .flatMap(OpenAiService::firstChoiceContent);
+    }
 
-        // Build content blocks for ALL pages
-        List<Object> contentBlocks = new ArrayList<>();
-        contentBlocks.add(Map.of("type", "text", "text", userPrompt));
+    /**
+     * Preprocessed (downscaled/grayscale/cropped) image when that makes it smaller,
+     * otherwise the upload streamed as received. Decoding runs on the report job scheduler.
+     */
+    private Mono<ChatCompletionRequest.Part> imagePart(ReportUpload imageFile) {
+        String mime = Optional.ofNullable(imageFile.getContentType()).orElse("image/png");
+        ChatCompletionRequest.Part original = ChatCompletionRequest.Part.image(mime, imageFile::getInputStream);
+        if (!imagePreprocessor.isEnabled()) {
+            return Mono.just(original);
+        }
+        return Mono.fromCallable(() -> Optional.ofNullable(imagePreprocessor.prepareUpload(imageFile)))
+                .subscribeOn(reportJobScheduler)
+                .map(prepared -> prepared
+                        .map(p -> ChatCompletionRequest.Part.image(p.mimeType(), p.bytes()))
+                        .orElse(original));
+    }
 
-        for (int i = 0; i < doc.getNumberOfPages(); i++) {
-            BufferedImage pageImage = renderer.renderImageWithDPI(i, 72); // reduced DPI for smaller payload
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(pageImage, "png", baos);
-//            ImageIO.write(pageImage, "jpg", baos); // smaller than png
+    /**
+     * Rendering is blocking CPU work, so it runs on the report job scheduler;
+     * the model call itself does not hold a thread.
+     * With app.extraction.chunk-pages set, long documents are split into page windows
+     * that are extracted concurrently and merged in page order.
+     */
+    public Mono<String> pdfToImageAndProcess(ReportUpload pdfFile, String systemPrompt, String userPrompt) {
+        return Mono.fromCallable(() -> pdfPageRenderer.render(pdfFile))
+                .subscribeOn(reportJobScheduler)
+                .flatMap(pages -> {
+                    if (chunkPages <= 0 || pages.size() <= chunkPages) {
+                        return makeChatCompletionCall(buildPageRequest(pages, systemPrompt, userPrompt), "extraction")
+                                .flatMap(OpenAiService::firstChoiceContent);
+                    }
+                    return extractInChunks(pages, systemPrompt, userPrompt);
+                });
+    }
 
-            String base64 = Base64.getEncoder().encodeToString(baos.toByteArray());
-            String dataUrl = "data:image/png;base64," + base64;
+    /**
+     * The model and the render/preprocess settings an extraction depends on, so cached
+     * extractions are not served after any of them changes.
+     */
+    public String extractionSettings() {
+        return "model=" + chatModel + ";chunk-pages=" + chunkPages + ";" + pdfPageRenderer.cacheKey()
+                + ";" + imagePreprocessor.cacheKey();
+    }
 
-            contentBlocks.add(Map.of("type", "image_url", "image_url", Map.of("url", dataUrl)));
+    /**
+     * The extraction request {@link #visionChatCompletion} or {@link #pdfToImageAndProcess} would send
+     * for the upload, built without calling the model. Long PDFs are not chunked.
+     */
+    public Mono<ChatCompletionRequest> extractionRequest(ReportUpload file, String systemPrompt, String userPrompt) {
+        if (file.isImage()) {
+            return imagePart(file).map(image -> new ChatCompletionRequest(chatModel, 2000)
+                    .system(systemPrompt)
+                    .user(List.of(ChatCompletionRequest.Part.text(userPrompt), image)));
         }
-        doc.close();
+        return Mono.fromCallable(() -> pdfPageRenderer.render(file))
+                .subscribeOn(reportJobScheduler)
+                .map(pages -> buildPageRequest(pages, systemPrompt, userPrompt));
+    }
 
-        List<Map<String,Object>> messages = new ArrayList<>();
-        if (systemPrompt != null && !systemPrompt.isBlank()) {
-            messages.add(Map.of("role","system","content", systemPrompt));
+    private Mono<String> extractInChunks(List<RenderedPage> pages, String systemPrompt, String userPrompt) {
+        List<List<RenderedPage>> windows = new ArrayList<>();
+        for (int from = 0; from < pages.size(); from += chunkPages) {
+            windows.add(pages.subList(from, Math.min(from + chunkPages, pages.size())));
         }
-        messages.add(Map.of("role","user","content", contentBlocks));
+        log.info("Extracting {} pages in {} windows of up to {} pages", pages.size(), windows.size(), chunkPages);
 
-        Map<String,Object> payload = new HashMap<>();
-        payload.put("model", chatModel);
-        payload.put("messages", messages);
-        payload.put("max_tokens", 2000);
+        return Flux.fromIterable(windows)
+                // flatMapSequential keeps page order regardless of which window finishes first
+                .flatMapSequential(window -> {
+                    String windowPrompt = userPrompt + String.format(
+                            " These are pages %d-%d of %d of the same report. Extract only what appears on these pages.",
+                            window.get(0).getPageIndex() + 1, window.get(window.size() - 1).getPageIndex() + 1, pages.size());
+                    String range = String.format("pages %d-%d", window.get(0).getPageIndex() + 1,
+                            window.get(window.size() - 1).getPageIndex() + 1);
+                    // an empty or unparseable window is asked once more, then fails the whole extraction:
+                    // a merge without it would be published and cached as the complete report
+                    Mono<String> attempt = Mono.<ChatResponse>defer(() ->
+                                    makeChatCompletionCall(buildPageRequest(window, systemPrompt, windowPrompt), "extraction_chunk"))
+                            .flatMap(OpenAiService::firstChoiceContent)
+                            .filter(extractionMerger::isUsable);
+                    return attempt
+                            .switchIfEmpty(Mono.defer(() -> {
+                                log.warn("No usable extraction for {}, retrying the window", range);
+                                return attempt;
+                            }))
+                            .switchIfEmpty(Mono.error(() -> new IllegalStateException("No usable extraction for " + range)));
+                }, chunkConcurrency)
+                .collectList()
+                .map(extractionMerger::merge);
+    }
 
-        ChatResponse resp = makeChatCompletionCall(payload);
+    /**
+     * Streaming extraction (image or PDF) that emits the model's output as it is generated.
+     * Chunked extraction cannot be streamed; it is emitted as a single fragment instead.
+     */
+    public Flux<String> streamExtraction(ReportUpload file, String systemPrompt, String userPrompt) {
+        if (file.isImage()) {
+            return imagePart(file).flatMapMany(image -> streamChatCompletionCall(new ChatCompletionRequest(chatModel, 2000)
+                    .system(systemPrompt)
+                    .user(List.of(ChatCompletionRequest.Part.text(userPrompt), image)), "extraction_stream"));
+        }
+        return Mono.fromCallable(() -> pdfPageRenderer.render(file))
+                .subscribeOn(reportJobScheduler)
+                .flatMapMany(pages -> {
+                    if (chunkPages > 0 && pages.size() > chunkPages) {
+                        return extractInChunks(pages, systemPrompt, userPrompt).flux();
+                    }
+                    return streamChatCompletionCall(buildPageRequest(pages, systemPrompt, userPrompt), "extraction_stream");
+                });
+    }
 
-        if (resp != null && resp.choices != null && !resp.choices.isEmpty() && resp.choices.get(0).message != null) {
-            return resp.choices.get(0).message.content;
+    private ChatCompletionRequest buildPageRequest(List<RenderedPage> pages, String systemPrompt, String userPrompt) {
+        // Build content blocks for the pages; text-layer pages go as text, scanned pages as images
+        List<ChatCompletionRequest.Part> parts = new ArrayList<>();
+        boolean anyText = pages.stream().anyMatch(RenderedPage::isText);
+        parts.add(ChatCompletionRequest.Part.text(anyText ? userPrompt + TEXT_LAYER_NOTE : userPrompt));
+        for (RenderedPage page : pages) {
+            if (page.isText()) {
+                parts.add(ChatCompletionRequest.Part.text("Page " + (page.getPageIndex() + 1) + ":\n" + page.getText()));
+            } else {
+                parts.add(ChatCompletionRequest.Part.image(page.getMimeType(), page.getBytes()));
+            }
         }
-        return null;
+
+        return new ChatCompletionRequest(chatModel, 2000)
+                .system(systemPrompt)
+                .user(parts);
     }
     // --- DTOs ---
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE = new ParameterizedTypeReference<>() { };
+    private static final ObjectReader CHUNK_READER = new ObjectMapper().readerFor(ChatChunk.class);
+    private static final Map<String, Object> FINDINGS_RESPONSE_FORMAT = Map.of(
+            "type", "json_schema",
+            "json_schema", Map.of(
+                    "name", "overall_finding",
+                    "strict", true,
+                    "schema", Map.of(
+                            "type", "object",
+                            "properties", Map.of("overall_finding", Map.of(
+                                    "type", "array",
+                                    "items", Map.of("type", "string"))),
+                            "required", List.of("overall_finding"),
+                            "additionalProperties", false)));
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class ChatChunk {
+        public List<ChunkChoice> choices;
+        public Usage usage;
+    }
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class ChunkChoice {
+        public int index;
+        public Message delta;
+    }
     @Data
     private static class EmbeddingResponse {
         public String object;
@@ -181,13 +474,16 @@ public class OpenAiService {
         public Message message;
     }
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     private static class Message {
         public String role;
         public String content;
     }
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     private static class Usage {
         public Integer prompt_tokens;
         public Integer completion_tokens;
+        public Integer total_tokens;
     }
 }
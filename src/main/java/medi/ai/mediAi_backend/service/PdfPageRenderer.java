@@ -0,0 +1,234 @@
+package medi.ai.mediAi_backend.service;
+
+import medi.ai.mediAi_backend.util.PageTextExtractor;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Renders and encodes PDF pages in parallel.
+ * With the text layer enabled, pages of digital PDFs that carry enough extractable
+ * text are returned as text and never rasterized; only scanned pages are rendered.
+ * PDFBox documents are not thread-safe, so each worker opens its own PDDocument
+ * and renders every k-th page on the shared render pool. A worker holds at most one
+ * raster at a time, which caps the number of uncompressed pages in memory at the
+ * parallelism level; since every worker also holds a parsed copy of the document,
+ * the default parallelism is capped at {@value #DEFAULT_MAX_PARALLELISM}.
+ */
+@Component
+public class PdfPageRenderer {
+
+    private static final Logger log = LoggerFactory.getLogger(PdfPageRenderer.class);
+
+    public enum Format { PNG, GRAY_PNG, JPEG }
+
+    static final int DEFAULT_MAX_PARALLELISM = 4;
+
+    /** app.render.* (pool-size belongs to the shared executor, see ReportJobConfig) */
+    @ConfigurationProperties("app.render")
+    public record Settings(@DefaultValue("72") float dpi,
+                           @DefaultValue("PNG") Format format,
+                           @DefaultValue("0.8") float jpegQuality,
+                           @DefaultValue("0") int parallelism,
+                           @DefaultValue TextLayer textLayer) {
+        public record TextLayer(@DefaultValue("true") boolean enabled, @DefaultValue("200") int minChars) { }
+    }
+
+    private final ExecutorService pageRenderExecutor;
+    private final PipelineMetrics metrics;
+    private final ImagePreprocessor preprocessor;
+    private final float dpi;
+    private final Format format;
+    private final float jpegQuality;
+    private final int parallelism;
+    private final boolean textLayer;
+    private final int textMinChars;
+
+    @Value("${app.uploads.pdf-max-main-memory:8MB}")
+    private DataSize pdfMaxMainMemory = DataSize.ofMegabytes(8);
+
+    public PdfPageRenderer(@Qualifier("pageRenderExecutor") ExecutorService pageRenderExecutor,
+                           PipelineMetrics metrics,
+                           ImagePreprocessor preprocessor,
+                           Settings settings) {
+        this.pageRenderExecutor = pageRenderExecutor;
+        this.metrics = metrics;
+        this.preprocessor = preprocessor;
+        this.dpi = settings.dpi();
+        this.format = settings.format();
+        this.jpegQuality = settings.jpegQuality();
+        this.parallelism = settings.parallelism();
+        this.textLayer = settings.textLayer().enabled();
+        this.textMinChars = settings.textLayer().minChars();
+    }
+
+    /** The settings that change what the model is sent, for cache keys. */
+    public String cacheKey() {
+        return "render=" + dpi + "," + format + (format == Format.JPEG ? "," + jpegQuality : "")
+                + ",text-layer=" + (textLayer ? textMinChars : "off");
+    }
+
+    /**
+     * Renders all pages of the upload, returned in page order. Every stride runs on the shared
+     * render pool; the calling thread only waits for them.
+     */
+    public List<RenderedPage> render(ReportUpload pdf) throws IOException {
+        long start = System.nanoTime();
+        List<RenderedPage> pages = new ArrayList<>();
+        PDDocument first = load(pdf);
+        int pageCount = first.getNumberOfPages();
+        int workers = Math.max(1, Math.min(effectiveParallelism(), pageCount));
+
+        // stride 0 takes over the document loaded here, the others parse their own copy; whoever
+        // claims the first document closes it, so it is closed even if stride 0 never runs
+        AtomicBoolean firstClaimed = new AtomicBoolean();
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<CompletableFuture<List<RenderedPage>>> futures = new ArrayList<>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                final int offset = w;
+                CompletableFuture<List<RenderedPage>> future = CompletableFuture.supplyAsync(() -> {
+                    if (offset == 0 ? !firstClaimed.compareAndSet(false, true) : aborted.get()) return List.of();
+                    try (PDDocument doc = offset == 0 ? first : load(pdf)) {
+                        return renderStride(doc, offset, workers, aborted);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, pageRenderExecutor);
+                future.whenComplete((result, error) -> {
+                    if (error != null) aborted.set(true); // the other strides stop at their next page
+                });
+                futures.add(future);
+            }
+            for (CompletableFuture<List<RenderedPage>> f : futures) {
+                pages.addAll(f.join());
+            }
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof IOException io ? io : new IOException("Page rendering failed", cause);
+        } finally {
+            // no-op once every stride has finished; otherwise unstarted strides are skipped
+            aborted.set(true);
+            futures.forEach(f -> f.cancel(true));
+            if (firstClaimed.compareAndSet(false, true)) first.close();
+        }
+        pages.sort(Comparator.comparingInt(RenderedPage::getPageIndex));
+        pages = preprocessor.dropDuplicates(pages);
+
+        if (log.isInfoEnabled()) {
+            long renderNanos = pages.stream().mapToLong(RenderedPage::getRenderNanos).sum();
+            long encodeNanos = pages.stream().mapToLong(RenderedPage::getEncodeNanos).sum();
+            long bytes = pages.stream().mapToLong(p -> p.getBytes().length).sum();
+            long textPages = pages.stream().filter(RenderedPage::isText).count();
+            log.info("Prepared {} of {} pages ({} from text layer, {} blank/duplicate skipped) as {} at {} dpi in {} ms (render {} ms, encode {} ms, {} KB)",
+                    pages.size(), pageCount, textPages, pageCount - pages.size(), format, dpi, (System.nanoTime() - start) / 1_000_000,
+                    renderNanos / 1_000_000, encodeNanos / 1_000_000, bytes / 1024);
+        }
+        return pages;
+    }
+
+    private List<RenderedPage> renderStride(PDDocument doc, int offset, int stride, AtomicBoolean aborted) throws IOException {
+        PDFRenderer renderer = new PDFRenderer(doc);
+        // the text layer is also read for blank detection: a page with any text on it is never blank
+        PageTextExtractor textExtractor = textLayer || preprocessor.detectsBlankPages() ? new PageTextExtractor() : null;
+        List<RenderedPage> out = new ArrayList<>();
+        for (int i = offset; i < doc.getNumberOfPages() && !aborted.get(); i += stride) {
+            boolean hasText = false;
+            if (textExtractor != null) {
+                long start = System.nanoTime();
+                String text = textExtractor.extract(doc, i);
+                metrics.recordStage("text_extract", System.nanoTime() - start);
+                if (textLayer && PageTextExtractor.isTextRich(text, textMinChars)) {
+                    log.debug("Page {}: using text layer ({} chars)", i, text.length());
+                    out.add(RenderedPage.text(i, text));
+                    continue;
+                }
+                hasText = PageTextExtractor.hasLetterOrDigit(text);
+            }
+            long t0 = System.nanoTime();
+            BufferedImage image = renderer.renderImageWithDPI(i, dpi, format == Format.GRAY_PNG ? ImageType.GRAY : ImageType.RGB);
+            long t1 = System.nanoTime();
+            metrics.recordStage("page_render", t1 - t0);
+            if (!hasText && preprocessor.isBlank(image)) {
+                metrics.recordStage("page_preprocess", System.nanoTime() - t1);
+                log.info("Page {}: no text layer and almost no ink, dropped as blank", i);
+                metrics.preprocessPageDropped("blank");
+                // blank pages compress to almost nothing, so measuring what was saved is cheap
+                metrics.preprocessBytesSaved("pdf", "blank", encode(image).length);
+                continue;
+            }
+            BufferedImage raw = image;
+            image = preprocessor.prepare(image);
+            ImagePreprocessor.Fingerprint fingerprint = preprocessor.isEnabled() ? ImagePreprocessor.fingerprint(image) : null;
+            long t2 = System.nanoTime();
+            metrics.recordStage("page_preprocess", t2 - t1);
+            byte[] bytes = encode(image);
+            long t3 = System.nanoTime();
+            metrics.recordStage("page_encode", t3 - t2);
+            if (image != raw) {
+                metrics.preprocessBytesSaved("pdf", "prepare",
+                        ImagePreprocessor.unpreparedBytesEstimate(raw, image, bytes.length) - bytes.length);
+            }
+            log.debug("Page {}: render {} ms, preprocess {} ms, encode {} ms, {} KB", i, (t1 - t0) / 1_000_000,
+                    (t2 - t1) / 1_000_000, (t3 - t2) / 1_000_000, bytes.length / 1024);
+            out.add(new RenderedPage(i, bytes, mimeType(), t1 - t0, t3 - t2, fingerprint));
+        }
+        return out;
+    }
+
+    /**
+     * Every worker parses its own copy, so each load is recorded.
+     * Spooled files are read through PDFBox's buffered file access instead of being loaded
+     * into memory, and PDFBox's scratch buffers spill to temp files past max-main-memory.
+     */
+    private PDDocument load(ReportUpload pdf) throws IOException {
+        long start = System.nanoTime();
+        MemoryUsageSetting memory = MemoryUsageSetting.setupMixed(pdfMaxMainMemory.toBytes());
+        try {
+            return pdf.getPath() != null
+                    ? PDDocument.load(pdf.getPath().toFile(), memory)
+                    : PDDocument.load(pdf.getBytes(), "", null, null, memory);
+        } finally {
+            metrics.recordStage("pdf_load", System.nanoTime() - start);
+        }
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        if (format == Format.JPEG) {
+            return ImagePreprocessor.jpeg(image, jpegQuality);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", baos);
+        return baos.toByteArray();
+    }
+
+    private String mimeType() {
+        return format == Format.JPEG ? "image/jpeg" : "image/png";
+    }
+
+    private int effectiveParallelism() {
+        return parallelism > 0 ? parallelism : Math.min(DEFAULT_MAX_PARALLELISM, Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,126 @@
+package medi.ai.mediAi_backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Meters for the report pipeline, exposed through Actuator (/actuator/prometheus).
+ * <ul>
+ *   <li>{@code report.stage} timer, tag stage: pdf_load, text_extract, page_render (rasterising only),
+ *       page_preprocess (blank check, downscale/crop, fingerprint), page_encode, extraction, enrichment,
+ *       findings, stomp_push</li>
+ *   <li>{@code openai.call} timer, tags call_type, model, outcome (one sample per HTTP attempt)</li>
+ *   <li>{@code openai.payload.bytes} summary, tag call_type</li>
+ *   <li>{@code openai.tokens} counter, tags call_type, model, kind (prompt/completion)</li>
+ *   <li>{@code report.fallbacks} counter, tag stage</li>
+ *   <li>{@code report.preprocess.pages.dropped} counter, tag reason (blank/duplicate)</li>
+ *   <li>{@code report.preprocess.bytes.saved} counter, tags source (upload/pdf) and step
+ *       (prepare/blank/duplicate); prepare savings on PDF pages are estimated</li>
+ * </ul>
+ */
+@Component
+public class PipelineMetrics {
+
+    private final MeterRegistry registry;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void warmup(String step, long nanos) {
+        Timer.builder("app.warmup")
+                .description("Duration of a startup warm-up step")
+                .tag("step", step)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordStage(String stage, long nanos) {
+        Timer.builder("report.stage")
+                .description("Duration of a report pipeline stage")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> T timeStage(String stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            recordStage(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void openAiCall(String callType, String model, String outcome, long nanos) {
+        Timer.builder("openai.call")
+                .description("Latency of a single OpenAI HTTP attempt")
+                .tags("call_type", callType, "model", model, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void payloadBytes(String callType, long bytes) {
+        DistributionSummary.builder("openai.payload.bytes")
+                .description("Request body size sent to OpenAI")
+                .baseUnit("bytes")
+                .tag("call_type", callType)
+                .register(registry)
+                .record(bytes);
+    }
+
+    public void tokens(String callType, String model, Integer promptTokens, Integer completionTokens) {
+        if (promptTokens != null) tokenCounter(callType, model, "prompt").increment(promptTokens);
+        if (completionTokens != null) tokenCounter(callType, model, "completion").increment(completionTokens);
+    }
+
+    public void fallback(String stage) {
+        Counter.builder("report.fallbacks")
+                .description("Stages that fell back to a degraded result")
+                .tag("stage", stage)
+                .register(registry)
+                .increment();
+    }
+
+    /** result: "sent" when a hedged duplicate was sent, "won" when it answered first. */
+    public void hedge(String callType, String result) {
+        Counter.builder("openai.hedges")
+                .description("Hedged duplicate requests")
+                .tags("call_type", callType, "result", result)
+                .register(registry)
+                .increment();
+    }
+
+    public void preprocessPageDropped(String reason) {
+        Counter.builder("report.preprocess.pages.dropped")
+                .description("Pages not sent to the model after preprocessing")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public void preprocessBytesSaved(String source, String step, long bytes) {
+        if (bytes <= 0) return;
+        Counter.builder("report.preprocess.bytes.saved")
+                .description("Image bytes removed by preprocessing")
+                .baseUnit("bytes")
+                .tags("source", source, "step", step)
+                .register(registry)
+                .increment(bytes);
+    }
+
+    private Counter tokenCounter(String callType, String model, String kind) {
+        return Counter.builder("openai.tokens")
+                .description("Tokens reported by the OpenAI usage block")
+                .tags("call_type", callType, "model", model, "kind", kind)
+                .register(registry);
+    }
+}
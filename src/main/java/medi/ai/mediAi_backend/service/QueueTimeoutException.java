@@ -0,0 +1,13 @@
+package medi.ai.mediAi_backend.service;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The call's deadline passed while it was still waiting in {@link OpenAiScheduler}'s queue or for
+ * tokens, before any request was sent; it says nothing about the upstream's health.
+ */
+public class QueueTimeoutException extends TimeoutException {
+    public QueueTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,48 @@
+package medi.ai.mediAi_backend.service;
+
+import lombok.Getter;
+
+/**
+ * One PDF page prepared for the model: either an encoded image plus how long it
+ * took to produce, or the page's text layer when the PDF is digital.
+ */
+@Getter
+public class RenderedPage {
+    private final int pageIndex;
+    private final byte[] bytes;
+    private final String mimeType;
+    private final long renderNanos;
+    private final long encodeNanos;
+    /** null for image pages. */
+    private final String text;
+    /** For duplicate detection; null when not computed. */
+    private final ImagePreprocessor.Fingerprint fingerprint;
+
+    public RenderedPage(int pageIndex, byte[] bytes, String mimeType, long renderNanos, long encodeNanos) {
+        this(pageIndex, bytes, mimeType, renderNanos, encodeNanos, null, null);
+    }
+
+    public RenderedPage(int pageIndex, byte[] bytes, String mimeType, long renderNanos, long encodeNanos,
+                        ImagePreprocessor.Fingerprint fingerprint) {
+        this(pageIndex, bytes, mimeType, renderNanos, encodeNanos, null, fingerprint);
+    }
+
+    private RenderedPage(int pageIndex, byte[] bytes, String mimeType, long renderNanos, long encodeNanos,
+                         String text, ImagePreprocessor.Fingerprint fingerprint) {
+        this.pageIndex = pageIndex;
+        this.bytes = bytes;
+        this.mimeType = mimeType;
+        this.renderNanos = renderNanos;
+        this.encodeNanos = encodeNanos;
+        this.text = text;
+        this.fingerprint = fingerprint;
+    }
+
+    public static RenderedPage text(int pageIndex, String text) {
+        return new RenderedPage(pageIndex, new byte[0], "text/plain", 0, 0, text, null);
+    }
+
+    public boolean isText() {
+        return text != null;
+    }
+}
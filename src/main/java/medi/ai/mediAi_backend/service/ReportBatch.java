@@ -0,0 +1,131 @@
+package medi.ai.mediAi_backend.service;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A multi-file upload and the status of each of its files.
+ * Every file's result is published under its own result id ({@code <batchId>-<index>}),
+ * so it can be subscribed to or fetched like a single upload.
+ */
+@Getter
+public class ReportBatch {
+
+    public enum Mode { INTERACTIVE, DEFERRED }
+
+    private final String id;
+    private final String userId;
+    private final Mode mode;
+    private final List<FileStatus> files;
+    private final Instant createdAt = Instant.now();
+
+    private volatile Instant finishedAt;
+    @Getter(AccessLevel.NONE)
+    private final List<Consumer<Map<String, Object>>> listeners = new CopyOnWriteArrayList<>();
+
+    @Getter
+    public static class FileStatus {
+        private final int index;
+        private final String filename;
+        private final String resultId;
+        private volatile ReportJob.Status status = ReportJob.Status.QUEUED;
+        private volatile String error;
+
+        FileStatus(int index, String filename, String resultId) {
+            this.index = index;
+            this.filename = filename;
+            this.resultId = resultId;
+        }
+
+        Map<String, Object> toView() {
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("index", index);
+            view.put("filename", filename);
+            view.put("resultId", resultId);
+            view.put("status", status.name());
+            if (error != null) view.put("error", error);
+            return view;
+        }
+    }
+
+    public ReportBatch(String id, String userId, Mode mode, List<String> filenames) {
+        this.id = id;
+        this.userId = userId;
+        this.mode = mode;
+        List<FileStatus> statuses = new ArrayList<>(filenames.size());
+        for (int i = 0; i < filenames.size(); i++) {
+            statuses.add(new FileStatus(i, filenames.get(i), id + "-" + i));
+        }
+        this.files = List.copyOf(statuses);
+    }
+
+    void markRunning(int index) {
+        update(index, ReportJob.Status.RUNNING, null);
+    }
+
+    void markCompleted(int index) {
+        update(index, ReportJob.Status.COMPLETED, null);
+    }
+
+    void markFailed(int index, String error) {
+        update(index, ReportJob.Status.FAILED, error);
+    }
+
+    private void update(int index, ReportJob.Status status, String error) {
+        FileStatus file = files.get(index);
+        file.error = error;
+        file.status = status;
+        Map<String, Object> event = file.toView();
+        event.put("type", "batch_progress");
+        event.put("batchId", id);
+        event.put("completed", count(ReportJob.Status.COMPLETED));
+        event.put("failed", count(ReportJob.Status.FAILED));
+        event.put("total", files.size());
+        if (isFinished() && finishedAt == null) finishedAt = Instant.now();
+        listeners.forEach(listener -> listener.accept(event));
+    }
+
+    public boolean isFinished() {
+        return count(ReportJob.Status.COMPLETED) + count(ReportJob.Status.FAILED) == files.size();
+    }
+
+    private int count(ReportJob.Status status) {
+        int n = 0;
+        for (FileStatus file : files) {
+            if (file.status == status) n++;
+        }
+        return n;
+    }
+
+    /** Progress events (one per file status change) are passed to the listener until it is removed. */
+    public void addListener(Consumer<Map<String, Object>> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<Map<String, Object>> listener) {
+        listeners.remove(listener);
+    }
+
+    /** Status view returned by the REST API. */
+    public Map<String, Object> toView() {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("batchId", id);
+        view.put("userId", userId);
+        view.put("mode", mode.name());
+        view.put("createdAt", createdAt.toString());
+        if (finishedAt != null) view.put("finishedAt", finishedAt.toString());
+        view.put("completed", count(ReportJob.Status.COMPLETED));
+        view.put("failed", count(ReportJob.Status.FAILED));
+        view.put("total", files.size());
+        view.put("files", files.stream().map(FileStatus::toView).toList());
+        return view;
+    }
+}
@@ -0,0 +1,171 @@
+package medi.ai.mediAi_backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Multi-file uploads. A batch is admitted as one job that takes one admission permit per file, so it is
+ * rejected up front rather than overflowing the job executor; its files run at most
+ * app.batch.concurrency at a time with BULK priority in the OpenAI scheduler, so a
+ * day's worth of reports does not crowd out interactive uploads.
+ * <ul>
+ *   <li>INTERACTIVE: each file runs the regular pipeline</li>
+ *   <li>DEFERRED: all extraction requests go to the OpenAI Batch API as one JSONL file;
+ *       enrichment and findings run when the results file is back</li>
+ * </ul>
+ * Progress is pushed to the batch owner's STOMP topic and to batch event listeners (SSE).
+ */
+@Service
+@RequiredArgsConstructor
+public class ReportBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportBatchService.class);
+
+    private final ReportProcessingService reportProcessingService;
+    private final ReportJobService reportJobService;
+    private final ReportPublisher reportPublisher;
+    private final OpenAiBatchClient openAiBatchClient;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, ReportBatch> batches = new ConcurrentHashMap<>();
+
+    @Value("${app.batch.concurrency:4}")
+    private int concurrency;
+
+    @Value("${app.jobs.retention:PT30M}")
+    private Duration retention;
+
+    /**
+     * Starts the batch and returns without waiting for the model.
+     * Each upload is closed when its file finishes.
+     * @throws JobRejectedException when too many reports are in flight; the caller still owns the uploads
+     */
+    public ReportBatch submit(List<ReportUpload> uploads, String userId, ReportBatch.Mode mode) {
+        evictExpired();
+        ReportBatch batch = new ReportBatch(UUID.randomUUID().toString(), userId, mode,
+                uploads.stream().map(ReportUpload::getFilename).toList());
+        batch.addListener(event -> reportPublisher.send(userId, toJson(event)));
+        batches.put(batch.getId(), batch);
+        try {
+            reportJobService.submit(UUID.randomUUID().toString(), userId, "batch:" + batch.getId(), uploads.size(), () -> run(batch, uploads)
+                    .doOnError(e -> failRemaining(batch, e))
+                    .doFinally(signal -> uploads.forEach(ReportUpload::close)));
+        } catch (JobRejectedException e) {
+            batches.remove(batch.getId());
+            throw e;
+        }
+        log.info("Started {} batch {} with {} files (userId={})", mode, batch.getId(), uploads.size(), userId);
+        return batch;
+    }
+
+    public Optional<ReportBatch> find(String batchId) {
+        return Optional.ofNullable(batches.get(batchId));
+    }
+
+    Mono<String> run(ReportBatch batch, List<ReportUpload> uploads) {
+        Mono<Void> work = batch.getMode() == ReportBatch.Mode.DEFERRED
+                ? runDeferred(batch, uploads)
+                : Flux.range(0, uploads.size())
+                        .flatMap(i -> track(batch, i, uploads.get(i),
+                                reportProcessingService.processReport(uploads.get(i), resultId(batch, i))), concurrency)
+                        .then();
+        return work
+                .then(Mono.fromSupplier(() -> summary(batch)))
+                .contextWrite(OpenAiScheduler.withPriority(OpenAiScheduler.Priority.BULK));
+    }
+
+    private Mono<Void> runDeferred(ReportBatch batch, List<ReportUpload> uploads) {
+        // each request goes to the JSONL input as soon as it is built, so its page images are not kept
+        Flux<Map.Entry<String, ChatCompletionRequest>> requests = Flux.range(0, uploads.size())
+                .flatMapSequential(i -> reportProcessingService.extractionRequest(uploads.get(i))
+                        .doOnSubscribe(s -> batch.markRunning(i))
+                        .map(request -> Map.entry(resultId(batch, i), request))
+                        .onErrorResume(e -> {
+                            fail(batch, i, "Could not prepare request: " + e.getMessage());
+                            return Mono.empty();
+                        }), concurrency);
+        return openAiBatchClient.execute(requests)
+                .flatMapMany(results -> Flux.range(0, uploads.size())
+                        .filter(i -> batch.getFiles().get(i).getStatus() == ReportJob.Status.RUNNING)
+                        .flatMap(i -> {
+                            String output = results.contents().get(resultId(batch, i));
+                            if (output == null) {
+                                fail(batch, i, results.errors().getOrDefault(resultId(batch, i), "no result"));
+                                uploads.get(i).close();
+                                return Mono.empty();
+                            }
+                            return track(batch, i, uploads.get(i),
+                                    reportProcessingService.finishReport(uploads.get(i), output, resultId(batch, i)));
+                        }, concurrency))
+                .then();
+    }
+
+    /** Updates the file's status from the pipeline; a failed file does not fail the batch. */
+    private Mono<String> track(ReportBatch batch, int index, ReportUpload upload, Mono<String> pipeline) {
+        return pipeline
+                .doOnSubscribe(s -> batch.markRunning(index))
+                .doOnSuccess(result -> batch.markCompleted(index))
+                .onErrorResume(e -> {
+                    // the pipeline has already published the ERROR state for this file
+                    batch.markFailed(index, e.getMessage());
+                    return Mono.empty();
+                })
+                .doFinally(signal -> upload.close());
+    }
+
+    private void failRemaining(ReportBatch batch, Throwable e) {
+        log.warn("Batch {} failed: {}", batch.getId(), e.getMessage());
+        for (ReportBatch.FileStatus file : batch.getFiles()) {
+            if (file.getStatus() == ReportJob.Status.QUEUED || file.getStatus() == ReportJob.Status.RUNNING) {
+                fail(batch, file.getIndex(), e.getMessage());
+            }
+        }
+    }
+
+    /** Marks the file failed and publishes the ERROR state a single upload would get. */
+    private void fail(ReportBatch batch, int index, String message) {
+        batch.markFailed(index, message);
+        ObjectNode error = mapper.createObjectNode();
+        error.put("error", "batch_failed");
+        error.put("message", message == null ? "" : message);
+        reportPublisher.publish(resultId(batch, index), null, ReportResultStore.Stage.ERROR, error.toString());
+    }
+
+    private static String resultId(ReportBatch batch, int index) {
+        return batch.getFiles().get(index).getResultId();
+    }
+
+    private String summary(ReportBatch batch) {
+        Map<String, Object> view = batch.toView();
+        view.remove("files");
+        return toJson(view);
+    }
+
+    private String toJson(Map<String, Object> value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void evictExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        batches.values().removeIf(b -> b.getFinishedAt() != null && b.getFinishedAt().isBefore(cutoff));
+    }
+}
@@ -0,0 +1,68 @@
+package medi.ai.mediAi_backend.service;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tracks a single report processing job from admission to completion.
+ */
+@Getter
+public class ReportJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final String userId;
+    private final String filename;
+    private final Instant createdAt = Instant.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String result;
+    private volatile String error;
+
+    public ReportJob(String id, String userId, String filename) {
+        this.id = id;
+        this.userId = userId;
+        this.filename = filename;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void markCompleted(String result) {
+        this.result = result;
+        finishedAt = Instant.now();
+        status = Status.COMPLETED;
+    }
+
+    void markFailed(String error) {
+        this.error = error;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    /** Status view returned by the REST API. */
+    public Map<String, Object> toView() {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("jobId", id);
+        view.put("userId", userId);
+        view.put("status", status.name());
+        view.put("createdAt", createdAt.toString());
+        if (startedAt != null) view.put("startedAt", startedAt.toString());
+        if (finishedAt != null) view.put("finishedAt", finishedAt.toString());
+        if (error != null) view.put("error", error);
+        if (result != null) view.put("result", result);
+        return view;
+    }
+}
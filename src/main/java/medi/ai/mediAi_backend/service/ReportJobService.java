@@ -0,0 +1,99 @@
+package medi.ai.mediAi_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Admits report jobs and keeps their status for the polling endpoint.
+ * A job's pipeline is a non-blocking chain, so admission is bounded by the
+ * number of jobs in flight rather than by worker threads.
+ * Finished jobs are dropped after the retention period.
+ */
+@Service
+public class ReportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportJobService.class);
+
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+
+    @Value("${app.jobs.retention:PT30M}")
+    private Duration retention;
+
+    @Value("${app.jobs.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    public ReportJobService(@Value("${app.jobs.max-in-flight:100}") int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * Subscribes to the job pipeline and returns immediately.
+     * @throws JobRejectedException when the in-flight limit is reached
+     */
+    public ReportJob submit(String userId, String filename, Supplier<Mono<String>> work) {
+        return submit(UUID.randomUUID().toString(), userId, filename, work);
+    }
+
+    /**
+     * Same, with the job id chosen by the caller (e.g. a job resumed after a restart keeps its id).
+     * @throws JobRejectedException when the in-flight limit is reached
+     */
+    public ReportJob submit(String jobId, String userId, String filename, Supplier<Mono<String>> work) {
+        return submit(jobId, userId, filename, 1, work);
+    }
+
+    /**
+     * Same, for a job that counts as {@code reports} reports against the in-flight limit (a batch
+     * takes one permit per file), so its work can never overflow the job executor's queue.
+     * @throws JobRejectedException when the in-flight limit is reached
+     */
+    public ReportJob submit(String jobId, String userId, String filename, int reports, Supplier<Mono<String>> work) {
+        evictExpired();
+        if (!permits.tryAcquire(reports)) {
+            log.warn("In-flight job limit reached, rejecting upload for userId={}", userId);
+            throw new JobRejectedException("Too many reports in progress", retryAfterSeconds);
+        }
+        ReportJob job = new ReportJob(jobId, userId, filename);
+        jobs.put(job.getId(), job);
+        Mono.defer(work)
+                .doOnSubscribe(s -> job.markRunning())
+                .doFinally(signal -> permits.release(reports))
+                .subscribe(job::markCompleted,
+                        e -> {
+                            log.warn("Job {} failed: {}", job.getId(), e.getMessage());
+                            job.markFailed(e.getMessage());
+                        },
+                        () -> {
+                            if (!job.isFinished()) job.markCompleted(null);
+                        });
+        return job;
+    }
+
+    public Optional<ReportJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void evictExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(j -> j.isFinished() && j.getFinishedAt().isBefore(cutoff));
+    }
+}
@@ -0,0 +1,332 @@
+package medi.ai.mediAi_backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of report jobs, so work in progress survives a restart.
+ * A journaled job's upload is renamed to {@code job-<jobId>.bin} in the spool dir (so the
+ * startup cleanup of {@code upload-*} leftovers does not touch it), and each completed stage
+ * is written as a checkpoint. On startup the unfinished jobs are read back with their last
+ * checkpoint ({@link #takeRecovered()}), so they resume without repeating the extraction call.
+ * One JSON record per line; a torn last line from a crash is ignored.
+ * <p>
+ * Records are written and fsynced by a single journal thread, never by the caller: checkpoints
+ * are taken on reactor threads. Records queued together share one fsync. Checkpoint data of at
+ * least app.journal.compress-min-bytes is stored gzipped.
+ */
+@Component
+public class ReportJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportJournal.class);
+    private static final String INPUT_PREFIX = "job-";
+
+    /**
+     * Stages in pipeline order; a later checkpoint replaces an earlier one. The enriched report is
+     * not checkpointed: enrichment is local and deterministic, so it is redone from EXTRACTED.
+     */
+    public enum Stage { EXTRACTED, FINAL }
+
+    /** An unfinished job as recorded: its input and the output of its last completed stage (null if none). */
+    public record PendingJob(String jobId, String userId, Path input, String contentType, String filename,
+                             Stage stage, String data) { }
+
+    private final UploadSpool uploadSpool;
+    private final ObjectMapper mapper = new ObjectMapper();
+    /** Begin record and latest checkpoint of every open job, used to compact the log. */
+    private final Map<String, PendingJob> open = new LinkedHashMap<>();
+
+    @Value("${app.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.journal.fsync:true}")
+    private boolean fsync;
+
+    @Value("${app.journal.compact-bytes:64MB}")
+    private DataSize compactBytes = DataSize.ofMegabytes(64);
+
+    @Value("${app.journal.compress-min-bytes:1024}")
+    private int compressMinBytes = 1024;
+
+    /** Owns {@link #channel} once the journal is open; records are queued in the order they were made. */
+    private final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "report-journal");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private Path file;
+    private FileChannel channel;
+    /** Size of the log, maintained by the journal thread. */
+    private volatile long logBytes;
+    private List<PendingJob> recovered = List.of();
+
+    public ReportJournal(UploadSpool uploadSpool) {
+        this.uploadSpool = uploadSpool;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reads the journal left by the previous run, compacts it to the unfinished jobs, deletes
+     * job inputs nothing refers to any more and opens the journal for appending.
+     */
+    @PostConstruct
+    synchronized void init() throws IOException {
+        if (!enabled) return;
+        file = uploadSpool.getDir().resolve("journal.log");
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    apply(line);
+                }
+            }
+        }
+        open.values().removeIf(job -> !Files.exists(job.input()));
+        rewrite(List.copyOf(open.values()));
+        recovered = List.copyOf(open.values());
+
+        Set<Path> inputs = new HashSet<>();
+        open.values().forEach(job -> inputs.add(job.input().toAbsolutePath()));
+        int removed = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadSpool.getDir(), INPUT_PREFIX + "*")) {
+            for (Path input : files) {
+                if (!inputs.contains(input.toAbsolutePath()) && Files.deleteIfExists(input)) removed++;
+            }
+        }
+        log.info("Journal {}: {} unfinished jobs to resume, removed {} orphaned inputs", file, recovered.size(), removed);
+    }
+
+    /** The jobs that were unfinished when the previous run stopped; returned once. */
+    public synchronized List<PendingJob> takeRecovered() {
+        List<PendingJob> jobs = recovered;
+        recovered = List.of();
+        return jobs;
+    }
+
+    /**
+     * Journals a newly admitted job: takes over the upload's content as the job input and
+     * records where it is. The returned upload must be used (and closed) instead of the given one.
+     */
+    public ReportUpload begin(String jobId, String userId, ReportUpload upload) throws IOException {
+        if (!enabled) return upload;
+        Path input = uploadSpool.getDir().resolve(INPUT_PREFIX + jobId + ".bin");
+        if (upload.getPath() != null) {
+            try {
+                Files.move(upload.getPath(), input, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(upload.getPath(), input, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else {
+            Files.write(input, upload.getBytes());
+        }
+        PendingJob job = new PendingJob(jobId, userId, input, upload.getContentType(), upload.getFilename(), null, null);
+        String record = beginRecord(job);
+        synchronized (this) {
+            open.put(jobId, job);
+            append(jobId, record);
+        }
+        return new ReportUpload(input, upload.getContentType(), upload.getFilename());
+    }
+
+    /**
+     * Records the output of a completed stage; no-op for jobs that are not journaled.
+     * Returns once the record is queued, before it is on disk.
+     */
+    public void checkpoint(String jobId, Stage stage, String data) {
+        if (!enabled || jobId == null) return;
+        String record = checkpointRecord(jobId, stage, data);
+        synchronized (this) {
+            PendingJob job = open.get(jobId);
+            if (job == null) return;
+            open.put(jobId, new PendingJob(jobId, job.userId(), job.input(), job.contentType(), job.filename(), stage, data));
+            append(jobId, record);
+        }
+    }
+
+    /** The job finished (or failed for good); it will not be resumed. */
+    public void end(String jobId) {
+        if (!enabled || jobId == null) return;
+        synchronized (this) {
+            if (open.remove(jobId) == null) return;
+            append(jobId, line(mapper.createObjectNode().put("t", "end").put("job", jobId)));
+            if (logBytes > compactBytes.toBytes()) {
+                // taken under the lock, so the snapshot is exactly the records queued before it
+                List<PendingJob> snapshot = List.copyOf(open.values());
+                logBytes = 0;
+                writer.execute(() -> {
+                    try {
+                        rewrite(snapshot);
+                    } catch (IOException e) {
+                        log.warn("Could not compact journal {}: {}", file, e.getMessage());
+                    }
+                });
+            }
+        }
+    }
+
+    /** Writes the queued records, then closes the log. */
+    @PreDestroy
+    void close() throws IOException {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Journal records still queued at shutdown were not written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (channel != null) channel.close();
+        }
+    }
+
+    private void apply(String line) {
+        if (line.isBlank()) return;
+        JsonNode record;
+        try {
+            record = mapper.readTree(line);
+        } catch (IOException e) {
+            log.warn("Skipping unreadable journal record: {}", e.getMessage());
+            return;
+        }
+        String jobId = record.path("job").asText();
+        switch (record.path("t").asText()) {
+            case "begin" -> open.put(jobId, new PendingJob(jobId, record.path("user").asText(),
+                    Path.of(record.path("input").asText()), record.path("type").asText(null),
+                    record.path("name").asText(null), null, null));
+            case "checkpoint" -> {
+                PendingJob job = open.get(jobId);
+                Stage stage = stage(record.path("stage").asText());
+                if (job != null && stage != null) {
+                    open.put(jobId, new PendingJob(jobId, job.userId(), job.input(), job.contentType(), job.filename(),
+                            stage, data(record)));
+                }
+            }
+            case "end" -> open.remove(jobId);
+            default -> log.warn("Skipping unknown journal record type: {}", record.path("t").asText());
+        }
+    }
+
+    /** The checkpoint's stage, or null for one this version does not know (the job resumes from its previous stage). */
+    private static Stage stage(String name) {
+        try {
+            return Stage.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            log.warn("Skipping journal checkpoint with unknown stage: {}", name);
+            return null;
+        }
+    }
+
+    /** Replaces the log with one begin (+ last checkpoint) per given job; runs on the journal thread once open. */
+    private void rewrite(List<PendingJob> jobs) throws IOException {
+        if (channel != null) channel.close();
+        Path tmp = Files.createTempFile(file.getParent(), "journal", ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            for (PendingJob job : jobs) {
+                write(out, beginRecord(job));
+                if (job.stage() != null) {
+                    write(out, checkpointRecord(job.jobId(), job.stage(), job.data()));
+                }
+            }
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        logBytes = channel.size();
+    }
+
+    /** Queues the record for the journal thread; callers hold the lock, so the log keeps their order. */
+    private void append(String jobId, String record) {
+        writer.execute(() -> {
+            try {
+                logBytes += write(channel, record);
+                // one fsync for everything written since the queue was last empty
+                if (fsync && writer.getQueue().isEmpty()) channel.force(false);
+            } catch (IOException e) {
+                // a job that cannot be journaled still runs; it just will not survive a restart
+                log.warn("Could not write journal record for job {}: {}", jobId, e.getMessage());
+            }
+        });
+    }
+
+    private String beginRecord(PendingJob job) {
+        return line(mapper.createObjectNode()
+                .put("t", "begin")
+                .put("job", job.jobId())
+                .put("user", job.userId())
+                .put("input", job.input().toString())
+                .put("type", job.contentType())
+                .put("name", job.filename()));
+    }
+
+    private String checkpointRecord(String jobId, Stage stage, String data) {
+        ObjectNode record = mapper.createObjectNode().put("t", "checkpoint").put("job", jobId).put("stage", stage.name());
+        byte[] raw = data.getBytes(StandardCharsets.UTF_8);
+        if (compressMinBytes > 0 && raw.length >= compressMinBytes) {
+            record.put("gz", Base64.getEncoder().encodeToString(ReportResultStore.gzip(raw)));
+        } else {
+            record.put("data", data);
+        }
+        return line(record);
+    }
+
+    private static String data(JsonNode checkpoint) {
+        if (checkpoint.has("gz")) {
+            byte[] gzipped = Base64.getDecoder().decode(checkpoint.path("gz").asText());
+            return new String(ReportResultStore.gunzip(gzipped), StandardCharsets.UTF_8);
+        }
+        return checkpoint.path("data").asText();
+    }
+
+    private String line(ObjectNode record) {
+        try {
+            return mapper.writeValueAsString(record) + "\n";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int write(FileChannel out, String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        int bytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return bytes;
+    }
+}
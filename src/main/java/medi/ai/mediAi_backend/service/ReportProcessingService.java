@@ -1,22 +1,36 @@
 package medi.ai.mediAi_backend.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import medi.ai.mediAi_backend.util.IncrementalReportParser;
+import medi.ai.mediAi_backend.util.OverallFindings;
 import medi.ai.mediAi_backend.util.PromptGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
 
 /**
- * Background worker that performs the sequential pipeline:
- * 1) extraction (vision/pdf)
- * 2) push partial JSON (patient + test_summary)
- * 3) enrich statuses (Java)
- * 4) generate overall_finding (OpenAI)
+ * Non-blocking pipeline composed as a single reactive chain:
+ * 1) extraction (vision/pdf); in streaming mode each test is enriched and pushed as soon as it is parsed
+ * 2) enrich statuses (Java)
+ * 3) push partial JSON (patient + test_summary)
+ * 4) generate overall_finding (OpenAI); in COMPACT mode only the findings array is generated and merged here
  * 5) push final JSON
+ * Only PDF rendering occupies a worker thread; the model calls do not.
+ * Single uploads are journaled ({@link ReportJournal}) after extraction and after step 4, and resumed from there after a restart.
  */
 @Service
 @RequiredArgsConstructor
@@ -27,72 +41,315 @@ public class ReportProcessingService {
     private final OpenAiService openAiService;
     private final LabStatusService labStatusService;
     private final PromptGenerator promptGenerator;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ReportPublisher reportPublisher;
+    private final ReportJobService reportJobService;
+    private final ExtractionCache extractionCache;
+    private final FindingsCache findingsCache;
+    private final PipelineMetrics metrics;
+    private final ReportJournal journal;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final OverallFindings overallFindings = new OverallFindings();
 
+    /** FULL: the model returns the whole report with overall_finding; COMPACT: only the findings. */
+    public enum FindingsMode { COMPACT, FULL }
 
-    public void processReportAsync(MultipartFile file, String userId) {
-        final String destination = "/medicalReportTopic/" + userId;
-        try {
-            String systemPrompt = promptGenerator.loadPromptText("/medicalReportPrompt.txt");
-            String userPrompt = "This is a medical report. Extract the single JSON object exactly as required by the system prompt. Return only JSON.";
-
-            // 1) Extract (vision or PDF)
-            String contentType = file.getContentType();
-            String cleanJson;
-            if (contentType != null && contentType.startsWith("image/")) {
-                cleanJson = openAiService.visionChatCompletion(systemPrompt, userPrompt, file, 8000);
-            } else {
-                cleanJson = openAiService.pdfToImageAndProcess(file, systemPrompt, userPrompt);
-            }
+    private static final String EXTRACTION_PROMPT = "/medicalReportPrompt.txt";
+    private static final String OVERALL_FINDING_PROMPT = "/overallFindingPrompt.txt";
+    private static final String OVERALL_FINDING_COMPACT_PROMPT = "/overallFindingCompactPrompt.txt";
+    /** Every prompt file the pipeline reads, loaded by {@link StartupWarmup}. */
+    static final List<String> PROMPTS = List.of(EXTRACTION_PROMPT, OVERALL_FINDING_PROMPT, OVERALL_FINDING_COMPACT_PROMPT);
+    private static final String EXTRACTION_USER_PROMPT =
+            "This is a medical report. Extract the single JSON object exactly as required by the system prompt. Return only JSON.";
 
-            if (cleanJson == null || cleanJson.isBlank()) {
-                throw new IllegalStateException("Extraction returned empty result");
-            }
+    @Value("${app.extraction.stream:false}")
+    private boolean streamExtraction;
 
-            // Remove markdown fences if model wrapped the JSON
-            cleanJson = cleanJson.replaceAll("```json", "").replaceAll("```", "").trim();
+    @Value("${app.findings.mode:COMPACT}")
+    private FindingsMode findingsMode;
 
+    private volatile boolean closing;
 
-            // 3) Enrich statuses (local deterministic Java)
-            String enrichedJson = labStatusService.enrichWithStatuses(cleanJson);
-            if (enrichedJson == null || enrichedJson.isBlank()) {
-                enrichedJson = cleanJson; // safe fallback
+    /**
+     * Starts the report pipeline and returns without waiting for the model.
+     * Once admitted, the upload becomes the journaled job input; it is deleted when the pipeline terminates.
+     * @throws JobRejectedException when too many reports are in flight; the caller still owns the upload
+     */
+    public ReportJob processReportAsync(ReportUpload file, String userId) {
+        String jobId = UUID.randomUUID().toString();
+        return reportJobService.submit(jobId, userId, file.getFilename(), () -> {
+            ReportUpload input;
+            try {
+                input = journal.begin(jobId, userId, file);
+            } catch (IOException e) {
+                log.warn("Could not journal job {}, it will not survive a restart: {}", jobId, e.getMessage());
+                input = file;
             }
-            messagingTemplate.convertAndSend(destination, enrichedJson);
-            log.info("Pushed partial report to {} (userId={})", destination, userId);
-            System.out.println("enrichedJson : " + enrichedJson);
-            // 4) Generate overall_finding via OpenAI
-            String overallPrompt = promptGenerator.loadPromptText("/overallFindingPrompt.txt");
-            String finalJson = openAiService.generateOverallFinding(enrichedJson, overallPrompt);
-            if (finalJson == null || finalJson.isBlank()) {
-                finalJson = enrichedJson; // fallback
+            ReportUpload journaled = input;
+            return processReport(journaled, userId, jobId)
+                    .doFinally(signal -> {
+                        file.close();
+                        if (interruptedByShutdown(signal)) return; // the journaled input is resumed on the next start
+                        journal.end(jobId);
+                        journaled.close();
+                    });
+        });
+    }
+
+    /**
+     * Runs before the job and render executors are shut down (this bean depends on them), so
+     * failures caused by the shutdown (rejected tasks, disposed schedulers) are recognised as such.
+     */
+    @PreDestroy
+    void shutdown() {
+        closing = true;
+    }
+
+    /**
+     * A journaled job that did not complete while the application was closing stays open in
+     * the journal: the failure says nothing about the report, so it is neither ended nor reported.
+     */
+    private boolean interruptedByShutdown(SignalType signal) {
+        return closing && journal.isEnabled() && signal != SignalType.ON_COMPLETE;
+    }
+
+    /**
+     * Resumes the jobs that were in progress when the previous run stopped, each from its last
+     * journaled stage, under its original job id.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    void resumeJournaledJobs() {
+        for (ReportJournal.PendingJob pending : journal.takeRecovered()) {
+            try {
+                ReportUpload input = new ReportUpload(pending.input(), pending.contentType(), pending.filename());
+                reportJobService.submit(pending.jobId(), pending.userId(), pending.filename(),
+                        () -> resume(pending, input).doFinally(signal -> {
+                            if (interruptedByShutdown(signal)) return;
+                            journal.end(pending.jobId());
+                            input.close();
+                        }));
+                log.info("Resumed job {} (userId={}) from stage {}", pending.jobId(), pending.userId(),
+                        pending.stage() == null ? "UPLOADED" : pending.stage());
+            } catch (IOException | JobRejectedException e) {
+                log.warn("Could not resume job {} (userId={}): {}", pending.jobId(), pending.userId(), e.getMessage());
+                sendError(pending.userId(), pending.jobId(), "not_resumed", e.getMessage());
+                journal.end(pending.jobId());
+                try {
+                    Files.deleteIfExists(pending.input());
+                } catch (IOException deleteFailed) {
+                    log.warn("Could not delete input {} of job {}: {}", pending.input(), pending.jobId(), deleteFailed.getMessage());
+                }
             }
+        }
+    }
+
+    private Mono<String> resume(ReportJournal.PendingJob pending, ReportUpload input) {
+        if (pending.stage() == null) {
+            return processReport(input, pending.userId(), pending.jobId());
+        }
+        return switch (pending.stage()) {
+            case EXTRACTED -> finishReport(Mono.just(pending.data()), pending.userId(), pending.jobId());
+            case FINAL -> Mono.fromSupplier(() -> {
+                reportPublisher.publish(pending.userId(), pending.jobId(), ReportResultStore.Stage.FINAL, pending.data());
+                return pending.data();
+            });
+        };
+    }
+
+    Mono<String> processReport(ReportUpload file, String userId) {
+        return processReport(file, userId, null);
+    }
+
+    /** @param jobId journaled job whose stages are checkpointed, or null */
+    private Mono<String> processReport(ReportUpload file, String userId, String jobId) {
+        String systemPrompt = promptGenerator.loadPromptText(EXTRACTION_PROMPT);
+
+        // 1) Extract (vision or PDF); identical uploads are served from / joined onto the cache
+        Mono<String> extraction = extractionCache.getOrLoad(extractionKey(file, systemPrompt), () ->
+                timed("extraction", extract(file, systemPrompt, EXTRACTION_USER_PROMPT, userId))
+                        // Remove markdown fences if model wrapped the JSON
+                        .map(ReportProcessingService::stripFences)
+                        .filter(json -> !json.isBlank()));
+
+        return finishReport(extraction, userId, jobId);
+    }
+
+    /**
+     * Single extraction request for the upload (no chunking, no streaming), used to build
+     * OpenAI batch input files.
+     */
+    Mono<ChatCompletionRequest> extractionRequest(ReportUpload file) {
+        return openAiService.extractionRequest(file, promptGenerator.loadPromptText(EXTRACTION_PROMPT), EXTRACTION_USER_PROMPT);
+    }
 
-            // Clean fences again
-            finalJson = finalJson.replaceAll("```json", "").replaceAll("```", "").trim();
+    /**
+     * Runs steps 2-5 on model output that was produced elsewhere (e.g. an OpenAI batch results file).
+     * The extraction is cached under the same key as an interactive one.
+     */
+    Mono<String> finishReport(ReportUpload file, String modelOutput, String userId) {
+        String systemPrompt = promptGenerator.loadPromptText(EXTRACTION_PROMPT);
+        return finishReport(extractionCache.getOrLoad(extractionKey(file, systemPrompt), () ->
+                Mono.justOrEmpty(modelOutput)
+                        .map(ReportProcessingService::stripFences)
+                        .filter(json -> !json.isBlank())), userId, null);
+    }
+
+    private String extractionKey(ReportUpload file, String systemPrompt) {
+        return ExtractionCache.key(file.sha256(), systemPrompt, EXTRACTION_USER_PROMPT, openAiService.extractionSettings());
+    }
+
+    private Mono<String> finishReport(Mono<String> extraction, String userId, String jobId) {
+        return completeReport(extraction
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Extraction returned empty result")))
+                .doOnNext(cleanJson -> journal.checkpoint(jobId, ReportJournal.Stage.EXTRACTED, cleanJson))
+                // 2) Enrich statuses (local deterministic Java)
+                .map(cleanJson -> {
+                    String enrichedJson = labStatusService.enrichWithStatuses(cleanJson);
+                    return (enrichedJson == null || enrichedJson.isBlank()) ? cleanJson : enrichedJson; // safe fallback
+                }), userId, jobId);
+    }
+
+    /** Steps 3-5 on an enriched report. */
+    private Mono<String> completeReport(Mono<String> enriched, String userId, String jobId) {
+        return enriched
+                // 3) Push partial result
+                .doOnNext(enrichedJson -> {
+                    reportPublisher.publish(userId, jobId, ReportResultStore.Stage.PARTIAL, enrichedJson);
+                    log.info("Pushed partial report (userId={})", userId);
+                    log.debug("Partial report for userId={}: {}", userId, enrichedJson);
+                })
+                // 4) Generate overall_finding via OpenAI
+                .flatMap(this::addOverallFinding)
+                .doOnNext(finalJson -> journal.checkpoint(jobId, ReportJournal.Stage.FINAL, finalJson))
+                // 5) Push final result
+                .doOnNext(finalJson -> {
+                    reportPublisher.publish(userId, jobId, ReportResultStore.Stage.FINAL, finalJson);
+                    log.info("Pushed final report (userId={})", userId);
+                    log.debug("Final report for userId={}: {}", userId, finalJson);
+                })
+                .doOnError(ex -> {
+                    if (jobId != null && closing) {
+                        log.info("Job {} (userId={}) interrupted by shutdown, it resumes on the next start: {}",
+                                jobId, userId, ex.toString());
+                    } else if (ex instanceof CircuitOpenException) {
+                        log.warn("OpenAI unavailable, report for userId={} not processed: {}", userId, ex.getMessage());
+                        sendError(userId, jobId, "upstream_unavailable", "The AI service is temporarily unavailable, please retry shortly");
+                    } else if (ex instanceof IOException) {
+                        log.error("I/O error during report processing for userId={}", userId, ex);
+                        sendError(userId, jobId, "io_error", ex.getMessage());
+                    } else {
+                        log.error("Report processing failed for userId={}", userId, ex);
+                        sendError(userId, jobId, "processing_failed", ex.getMessage());
+                    }
+                });
+    }
+
+    private Mono<String> addOverallFinding(String enrichedJson) {
+        if (findingsMode == FindingsMode.FULL) {
+            String overallPrompt = promptGenerator.loadPromptText(OVERALL_FINDING_PROMPT);
+            return timed("findings", openAiService.generateOverallFinding(enrichedJson, overallPrompt))
+                    .onErrorResume(this::findingsUnavailable)
+                    .map(ReportProcessingService::stripFences)
+                    .filter(json -> !json.isBlank())
+                    .switchIfEmpty(Mono.fromSupplier(() -> findingsFallback(enrichedJson)));
+        }
+        String compactPrompt = promptGenerator.loadPromptText(OVERALL_FINDING_COMPACT_PROMPT);
+        String compact;
+        String signature;
+        try {
+            compact = overallFindings.compactInput(enrichedJson);
+            signature = overallFindings.signature(enrichedJson);
+        } catch (IOException e) {
+            log.warn("Enriched report is not valid JSON, skipping overall_finding: {}", e.getMessage());
+            return Mono.just(findingsFallback(enrichedJson));
+        }
+        // reports with the same abnormal tests, age bucket and gender reuse one findings array
+        return findingsCache.getOrLoad(signature, () ->
+                        timed("findings", openAiService.generateFindings(compact, compactPrompt))
+                                .map(ReportProcessingService::stripFences)
+                                .flatMap(output -> {
+                                    try {
+                                        return Mono.just(overallFindings.findingsArray(output));
+                                    } catch (IOException | IllegalArgumentException e) {
+                                        log.warn("Unusable overall_finding output: {}", e.getMessage());
+                                        return Mono.empty();
+                                    }
+                                }))
+                // outside the loader, so a failed call is not cached for the signature
+                .onErrorResume(this::findingsUnavailable)
+                .map(findings -> {
+                    try {
+                        return overallFindings.merge(enrichedJson, findings);
+                    } catch (IOException e) {
+                        log.warn("Could not merge overall_finding: {}", e.getMessage());
+                        return findingsFallback(enrichedJson);
+                    }
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> findingsFallback(enrichedJson)));
+    }
+
+    /** The enriched report is already complete, so a failed findings call only costs the overall_finding. */
+    private <T> Mono<T> findingsUnavailable(Throwable e) {
+        log.warn("overall_finding call failed, publishing the report without it: {}", e.toString());
+        return Mono.empty();
+    }
 
-            // 5) Push final result
-            messagingTemplate.convertAndSend(destination, finalJson);
-            log.info("Pushed final report to {} (userId={})", destination, userId);
-            System.out.println("finalJson : " + finalJson);
+    private String findingsFallback(String enrichedJson) {
+        metrics.fallback("findings");
+        return enrichedJson;
+    }
 
-        } catch (IOException ioEx) {
-            log.error("I/O error during report processing for userId={}", userId, ioEx);
-            sendError(destination, "io_error", ioEx.getMessage());
-        } catch (Exception ex) {
-            log.error("Report processing failed for userId={}", userId, ex);
-            sendError(destination, "processing_failed", ex.getMessage());
+    private Mono<String> extract(ReportUpload file, String systemPrompt, String userPrompt, String userId) {
+        if (!streamExtraction) {
+            return file.isImage()
+                    ? openAiService.visionChatCompletion(systemPrompt, userPrompt, file, 8000)
+                    : openAiService.pdfToImageAndProcess(file, systemPrompt, userPrompt);
         }
+        IncrementalReportParser parser = new IncrementalReportParser();
+        return openAiService.streamExtraction(file, systemPrompt, userPrompt)
+                .concatMapIterable(parser::feed)
+                .doOnNext(event -> pushDelta(userId, event))
+                .then(Mono.fromSupplier(parser::text));
+    }
+
+    /**
+     * Delta messages carry a "type" so the frontend can tell them from full documents:
+     * {"type":"patient","patient":{...}} or {"type":"test","path":["Group","Test"],"entry":[value,unit,range,status]}
+     */
+    private void pushDelta(String userId, IncrementalReportParser.Event event) {
+        ObjectNode message = mapper.createObjectNode();
+        if (event.kind() == IncrementalReportParser.Kind.PATIENT) {
+            message.put("type", "patient");
+            message.set("patient", event.node());
+        } else {
+            labStatusService.enrichEntry((ArrayNode) event.node());
+            message.put("type", "test");
+            ArrayNode path = message.putArray("path");
+            event.path().forEach(path::add);
+            message.set("entry", event.node());
+        }
+        reportPublisher.send(userId, message.toString());
+    }
+
+    /** Records the time from subscription until the stage emits or terminates. */
+    private <T> Mono<T> timed(String stage, Mono<T> work) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return work.doFinally(signal -> metrics.recordStage(stage, System.nanoTime() - start));
+        });
+    }
+
+    private static String stripFences(String json) {
+        return json.replaceAll("```json", "").replaceAll("```", "").trim();
     }
 
-    private void sendError(String destination, String code, String message) {
+    private void sendError(String userId, String jobId, String code, String message) {
         // Minimal error object — frontend can detect "error" key
         String sanitized = (message == null) ? "" : message.replace("\"", "'");
         String errJson = String.format("{\"error\":\"%s\",\"message\":\"%s\"}", code, sanitized);
         try {
-            messagingTemplate.convertAndSend(destination, errJson);
+            reportPublisher.publish(userId, jobId, ReportResultStore.Stage.ERROR, errJson);
         } catch (Exception e) {
-            log.error("Failed to send error message to {}: {}", destination, e.getMessage());
+            log.error("Failed to send error message (userId={}): {}", userId, e.getMessage());
         }
     }
 }
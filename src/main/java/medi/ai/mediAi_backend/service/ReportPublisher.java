@@ -0,0 +1,95 @@
+package medi.ai.mediAi_backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Sends report messages to /medicalReportTopic/{userId} and records full states in the
+ * {@link ReportResultStore} so they can be replayed to late subscribers.
+ * With app.results.stomp-compress-min-bytes set, larger messages are sent as
+ * {"type":"gzip","data":"<base64 gzip of the JSON>"}; off by default since the frontend has to opt in.
+ */
+@Component
+public class ReportPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportPublisher.class);
+    public static final String TOPIC_PREFIX = "/medicalReportTopic/";
+    private static final MimeType TEXT_UTF8 = new MimeType("text", "plain", StandardCharsets.UTF_8);
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MessageChannel clientOutboundChannel;
+    private final ReportResultStore resultStore;
+    private final PipelineMetrics metrics;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${app.results.stomp-compress-min-bytes:0}")
+    private int stompCompressMinBytes;
+
+    public ReportPublisher(SimpMessagingTemplate messagingTemplate,
+                           @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                           ReportResultStore resultStore, PipelineMetrics metrics) {
+        this.messagingTemplate = messagingTemplate;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.resultStore = resultStore;
+        this.metrics = metrics;
+    }
+
+    /** Stores the state as the job's latest and sends it; jobId may be null. */
+    public void publish(String userId, String jobId, ReportResultStore.Stage stage, String json) {
+        resultStore.put(userId, jobId, stage, json);
+        send(userId, json);
+    }
+
+    /** Sends without storing, e.g. streaming deltas that a later full state supersedes. */
+    public void send(String userId, String json) {
+        long start = System.nanoTime();
+        messagingTemplate.convertAndSend(TOPIC_PREFIX + userId, envelope(json));
+        metrics.recordStage("stomp_push", System.nanoTime() - start);
+    }
+
+    /**
+     * Sends the latest stored state of each of the user's jobs, oldest first, to one subscription
+     * only. Going through the broker would re-deliver them to every other tab or device already
+     * subscribed to the user's topic.
+     */
+    public boolean replay(String userId, String sessionId, String subscriptionId) {
+        List<ReportResultStore.Result> results = resultStore.forUser(userId);
+        for (ReportResultStore.Result result : results) {
+            log.info("Replaying {} report of job {} to late subscriber (userId={}, session={})",
+                    result.stage(), result.jobId(), userId, sessionId);
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(sessionId);
+            headers.setSubscriptionId(subscriptionId);
+            headers.setDestination(TOPIC_PREFIX + userId);
+            headers.setContentType(TEXT_UTF8);
+            headers.setLeaveMutable(true);
+            byte[] payload = envelope(result.json()).getBytes(StandardCharsets.UTF_8);
+            clientOutboundChannel.send(MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+        }
+        return !results.isEmpty();
+    }
+
+    private String envelope(String json) {
+        if (stompCompressMinBytes <= 0 || json.length() < stompCompressMinBytes) return json;
+        byte[] gzipped = ReportResultStore.gzip(json.getBytes(StandardCharsets.UTF_8));
+        ObjectNode message = mapper.createObjectNode();
+        message.put("type", "gzip");
+        message.put("data", Base64.getEncoder().encodeToString(gzipped));
+        return message.toString();
+    }
+}
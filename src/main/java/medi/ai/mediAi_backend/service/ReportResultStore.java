@@ -0,0 +1,139 @@
+package medi.ai.mediAi_backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Latest report state per user and job (partial, final or error), so a browser that subscribes
+ * late or reconnects gets its results replayed instead of re-uploading. Keyed by job as well,
+ * so a second upload's PARTIAL does not hide the first upload's FINAL; states published
+ * without a job id (e.g. batch results under their resultId) are keyed by user only.
+ * LRU bounded by entry count, entries expire after the TTL; large payloads are kept gzipped.
+ */
+@Component
+public class ReportResultStore {
+
+    public enum Stage { PARTIAL, FINAL, ERROR }
+
+    @Value("${app.results.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${app.results.ttl:PT1H}")
+    private Duration ttl;
+
+    @Value("${app.results.compress-min-bytes:4096}")
+    private int compressMinBytes;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private record Entry(String userId, String jobId, Stage stage, byte[] data, boolean gzipped, Instant updatedAt) { }
+
+    /** A stored state, decompressed. */
+    public record Result(String userId, String jobId, Stage stage, String json, Instant updatedAt) {
+        public Map<String, Object> toView() {
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("userId", userId);
+            if (jobId != null) view.put("jobId", jobId);
+            view.put("stage", stage.name());
+            view.put("updatedAt", updatedAt.toString());
+            view.put("result", json);
+            return view;
+        }
+    }
+
+    /** @param jobId the job the state belongs to, or null */
+    public void put(String userId, String jobId, Stage stage, String json) {
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8);
+        boolean gzip = compressMinBytes > 0 && raw.length >= compressMinBytes;
+        Entry entry = new Entry(userId, jobId, stage, gzip ? gzip(raw) : raw, gzip, Instant.now());
+        synchronized (this) {
+            entries.put(key(userId, jobId), entry);
+            var it = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /** The state of one job (jobId null: the state published for the user without a job). */
+    public Optional<Result> get(String userId, String jobId) {
+        Entry entry;
+        synchronized (this) {
+            String key = key(userId, jobId);
+            entry = entries.get(key);
+            if (entry != null && isExpired(entry)) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        return Optional.ofNullable(entry).map(ReportResultStore::toResult);
+    }
+
+    /** The most recently updated state across the user's jobs. */
+    public Optional<Result> latest(String userId) {
+        List<Result> all = forUser(userId);
+        return all.isEmpty() ? Optional.empty() : Optional.of(all.get(all.size() - 1));
+    }
+
+    /** Every unexpired state of the user, least recently updated first. */
+    public List<Result> forUser(String userId) {
+        List<Entry> found = new ArrayList<>();
+        synchronized (this) {
+            // a scan, but the store is bounded by max-entries
+            for (Entry entry : entries.values()) {
+                if (entry.userId().equals(userId) && !isExpired(entry)) found.add(entry);
+            }
+        }
+        found.sort(Comparator.comparing(Entry::updatedAt));
+        return found.stream().map(ReportResultStore::toResult).toList();
+    }
+
+    private boolean isExpired(Entry entry) {
+        return entry.updatedAt().isBefore(Instant.now().minus(ttl));
+    }
+
+    private static String key(String userId, String jobId) {
+        return jobId == null ? userId : userId + '/' + jobId;
+    }
+
+    private static Result toResult(Entry entry) {
+        byte[] raw = entry.gzipped() ? gunzip(entry.data()) : entry.data();
+        return new Result(entry.userId(), entry.jobId(), entry.stage(), new String(raw, StandardCharsets.UTF_8), entry.updatedAt());
+    }
+
+    static byte[] gzip(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] gunzip(byte[] data) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
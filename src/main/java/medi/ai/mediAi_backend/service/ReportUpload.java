@@ -0,0 +1,109 @@
+package medi.ai.mediAi_backend.service;
+
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Copy of an uploaded report that outlives the HTTP request.
+ * The servlet container removes multipart parts once the request completes,
+ * so the content is captured before the job is handed to a worker thread:
+ * spooled to a temp file (see {@link UploadSpool}), or held in memory for small inputs and tests.
+ * Closing deletes the spooled file.
+ */
+public class ReportUpload implements Closeable {
+
+    /** Hash in windows so a large file is never mapped in one piece. */
+    private static final long HASH_WINDOW = 64L * 1024 * 1024;
+
+    private final byte[] bytes;
+    /** Spooled file, null for in-memory uploads. */
+    @Getter
+    private final Path path;
+    @Getter
+    private final String contentType;
+    @Getter
+    private final String filename;
+    @Getter
+    private final long size;
+    private volatile String sha256;
+
+    public ReportUpload(byte[] bytes, String contentType, String filename) {
+        this.bytes = bytes;
+        this.path = null;
+        this.contentType = contentType;
+        this.filename = filename;
+        this.size = bytes.length;
+    }
+
+    public ReportUpload(Path path, String contentType, String filename) throws IOException {
+        this.bytes = null;
+        this.path = path;
+        this.contentType = contentType;
+        this.filename = filename;
+        this.size = Files.size(path);
+    }
+
+    public InputStream getInputStream() throws IOException {
+        return path != null ? Files.newInputStream(path) : new ByteArrayInputStream(bytes);
+    }
+
+    /** Content for in-memory uploads only; spooled uploads are read through {@link #getPath()}. */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Hex SHA-256 of the content, computed once.
+     * Spooled files are hashed through a memory-mapped channel, so the content is not copied onto the heap.
+     */
+    public String sha256() {
+        if (sha256 == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                if (path == null) {
+                    digest.update(bytes);
+                } else {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        for (long pos = 0; pos < size; pos += HASH_WINDOW) {
+                            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(HASH_WINDOW, size - pos));
+                            digest.update(window);
+                        }
+                    }
+                }
+                sha256 = HexFormat.of().formatHex(digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return sha256;
+    }
+
+    public boolean isImage() {
+        return contentType != null && contentType.startsWith("image/");
+    }
+
+    @Override
+    public void close() {
+        if (path == null) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // the spool directory is swept on startup
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package medi.ai.mediAi_backend.service;
+
+import medi.ai.mediAi_backend.util.PromptGenerator;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.client.HttpClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Does the one-time initialization the first report would otherwise pay for: PDFBox's font
+ * mapping (a scan of the system fonts), Java2D and the ImageIO codecs, reading the prompt files
+ * and Reactor Netty's client resources.
+ * Nothing here runs during context refresh; it runs once the application is ready and before
+ * readiness is reported as ACCEPTING_TRAFFIC, so a new replica takes its first upload warm.
+ * A failing step is logged and skipped, it only costs the first request some latency.
+ */
+@Component
+public class StartupWarmup {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+
+    private final PromptGenerator promptGenerator;
+    private final PipelineMetrics metrics;
+
+    @Value("${app.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.render.dpi:72}")
+    private float dpi;
+
+    public StartupWarmup(PromptGenerator promptGenerator, PipelineMetrics metrics) {
+        this.promptGenerator = promptGenerator;
+        this.metrics = metrics;
+    }
+
+    /** Runs before the other ready listeners, so resumed journaled jobs start warm too. */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    void warmUp() {
+        if (!enabled) return;
+        long start = System.nanoTime();
+        step("prompts", () -> ReportProcessingService.PROMPTS.forEach(promptGenerator::loadPromptText));
+        step("imageio", this::warmImageIo);
+        step("pdfbox", this::warmPdfBox);
+        // event loops, native transport and DNS resolver shared by the OpenAI WebClient
+        step("http_client", () -> HttpClient.create().warmup().block(Duration.ofSeconds(10)));
+        log.info("Warm-up finished in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /** Encodes and decodes a small image in every format the pipeline writes. */
+    private void warmImageIo() throws IOException {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        for (String format : new String[]{"png", "jpeg"}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, format, out);
+            ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        }
+    }
+
+    /** Renders and text-extracts a one-page PDF with a standard font, which builds PDFBox's font cache. */
+    private void warmPdfBox() throws IOException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A6);
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(20, 200);
+                content.showText("Hemoglobin 13.5 g/dL 12-15");
+                content.endText();
+            }
+            document.save(pdf);
+        }
+        try (PDDocument document = PDDocument.load(pdf.toByteArray())) {
+            new PDFTextStripper().getText(document);
+            new PDFRenderer(document).renderImageWithDPI(0, dpi, ImageType.RGB);
+        }
+    }
+
+    private void step(String name, WarmupStep step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+        } catch (Exception | LinkageError e) {
+            log.warn("Warm-up step {} failed: {}", name, e.toString());
+        } finally {
+            metrics.warmup(name, System.nanoTime() - start);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WarmupStep {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,62 @@
+package medi.ai.mediAi_backend.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Spools multipart uploads to temp files so a job never holds a whole report on the heap.
+ * Files are deleted when the job finishes ({@link ReportUpload#close()}); leftovers from a
+ * crash are removed on startup. Inputs of journaled jobs are kept ({@link ReportJournal}).
+ */
+@Component
+public class UploadSpool {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadSpool.class);
+    private static final String PREFIX = "upload-";
+
+    @Value("${app.uploads.spool-dir:}")
+    private String spoolDir;
+
+    private Path dir;
+
+    @PostConstruct
+    void init() throws IOException {
+        dir = StringUtils.hasText(spoolDir)
+                ? Path.of(spoolDir)
+                : Path.of(System.getProperty("java.io.tmpdir"), "mediai-uploads");
+        Files.createDirectories(dir);
+        int removed = 0;
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, PREFIX + "*")) {
+            for (Path file : leftovers) {
+                if (Files.deleteIfExists(file)) removed++;
+            }
+        }
+        log.info("Spooling uploads to {} (removed {} leftover files)", dir.toAbsolutePath(), removed);
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /** Streams the part to a new temp file; the multipart part itself is already on disk. */
+    public ReportUpload spool(MultipartFile file) throws IOException {
+        Path target = Files.createTempFile(dir, PREFIX, ".bin");
+        try {
+            file.transferTo(target);
+            return new ReportUpload(target, file.getContentType(), file.getOriginalFilename());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+}
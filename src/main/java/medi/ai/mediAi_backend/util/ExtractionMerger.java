@@ -0,0 +1,135 @@
+package medi.ai.mediAi_backend.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges extraction JSON produced for separate page windows of one document.
+ * Every fragment must be usable (a JSON object); a merge that silently left out a
+ * window would be published and cached as if it were the whole report.
+ * Fragments are merged in page order, so the result does not depend on which
+ * call finished first:
+ * <ul>
+ *   <li>patient: first non-empty value per field</li>
+ *   <li>test_summary: groups are merged recursively; for a duplicate test an identical
+ *       entry is dropped, an entry with an empty value is replaced by a filled one, and
+ *       a conflicting entry is kept under "Name (2)", "Name (3)", ...</li>
+ * </ul>
+ */
+public class ExtractionMerger {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractionMerger.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** Whether the fragment can be merged, i.e. parses to a JSON object. */
+    public boolean isUsable(String fragment) {
+        return parse(fragment) != null;
+    }
+
+    /**
+     * @param fragments extraction results in page order (markdown fences allowed)
+     * @return merged JSON
+     * @throws IllegalArgumentException if any fragment is empty or cannot be parsed
+     */
+    public String merge(List<String> fragments) {
+        List<JsonNode> parsed = new ArrayList<>(fragments.size());
+        List<Integer> unusable = new ArrayList<>();
+        for (int i = 0; i < fragments.size(); i++) {
+            JsonNode fragment = parse(fragments.get(i));
+            if (fragment == null) unusable.add(i);
+            parsed.add(fragment);
+        }
+        if (fragments.isEmpty() || !unusable.isEmpty()) {
+            throw new IllegalArgumentException("Unusable extraction fragments " + unusable + " of " + fragments.size());
+        }
+
+        ObjectNode merged = mapper.createObjectNode();
+        merged.putObject("patient");
+        merged.putObject("test_summary");
+        for (JsonNode fragment : parsed) {
+            mergePatient((ObjectNode) merged.get("patient"), fragment.get("patient"));
+            JsonNode ts = fragment.get("test_summary");
+            if (ts != null && ts.isObject()) {
+                mergeGroup((ObjectNode) merged.get("test_summary"), (ObjectNode) ts);
+            }
+        }
+        return merged.toString();
+    }
+
+    private JsonNode parse(String fragment) {
+        if (fragment == null) return null;
+        String json = fragment.replace("```json", "").replace("```", "").trim();
+        if (json.isEmpty()) return null;
+        try {
+            JsonNode node = mapper.readTree(json);
+            return node.isObject() ? node : null;
+        } catch (Exception e) {
+            log.warn("Unparseable extraction fragment: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void mergePatient(ObjectNode target, JsonNode source) {
+        if (source == null || !source.isObject()) return;
+        Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> f = fields.next();
+            JsonNode existing = target.get(f.getKey());
+            if (existing == null || isEmpty(existing)) {
+                if (existing == null || !isEmpty(f.getValue())) target.set(f.getKey(), f.getValue());
+            }
+        }
+    }
+
+    private static void mergeGroup(ObjectNode target, ObjectNode source) {
+        Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> f = fields.next();
+            String name = f.getKey();
+            JsonNode incoming = f.getValue();
+            JsonNode existing = target.get(name);
+
+            if (existing == null) {
+                target.set(name, incoming);
+            } else if (existing.isObject() && incoming.isObject()) {
+                mergeGroup((ObjectNode) existing, (ObjectNode) incoming);
+            } else if (existing.equals(incoming)) {
+                // same test repeated on an overlapping page
+            } else if (existing.isArray() && incoming.isArray() && isEmpty(existing.path(0)) && !isEmpty(incoming.path(0))) {
+                target.set(name, incoming);
+            } else if (existing.isArray() && incoming.isArray() && isEmpty(incoming.path(0))) {
+                // keep the filled entry
+            } else if (!containsEqual(target, name, incoming)) {
+                target.set(freeName(target, name), incoming);
+            }
+        }
+    }
+
+    private static boolean containsEqual(ObjectNode group, String name, JsonNode value) {
+        for (int n = 2; group.has(name + " (" + n + ")"); n++) {
+            if (group.get(name + " (" + n + ")").equals(value)) return true;
+        }
+        return false;
+    }
+
+    private static String freeName(ObjectNode group, String name) {
+        int n = 2;
+        while (group.has(name + " (" + n + ")")) n++;
+        return name + " (" + n + ")";
+    }
+
+    private static boolean isEmpty(JsonNode node) {
+        return node == null || node.isNull() || node.isMissingNode()
+                || (node.isValueNode() && node.asText("").isBlank())
+                || (node.isContainerNode() && node.isEmpty());
+    }
+}
@@ -0,0 +1,171 @@
+package medi.ai.mediAi_backend.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Parses an extraction document while it is still being streamed by the model and
+ * reports each piece as soon as it is complete:
+ * the patient object, and every ["value","unit","reference_range"] entry in
+ * test_summary (at any nesting depth) together with its group path.
+ * Text before the first '{' (e.g. a markdown fence) and after the closing '}' is ignored.
+ * If the stream turns out not to be valid JSON, event reporting stops but the text is
+ * still collected, so the caller can fall back to the complete document.
+ * Not thread-safe; one instance per stream.
+ */
+public class IncrementalReportParser {
+
+    public enum Kind { PATIENT, TEST }
+
+    /** A completed piece of the document. For TEST, path is group names followed by the test name. */
+    public record Event(Kind kind, List<String> path, JsonNode node) { }
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final StringBuilder text = new StringBuilder();
+
+    /** Field names of the open objects, root first ("" for the root). */
+    private final Deque<String> objects = new ArrayDeque<>();
+    private String currentField;
+    private boolean started;
+    private boolean done;
+    private boolean failed;
+
+    private ObjectNode patient;
+    private ArrayNode entry;
+    private List<String> entryPath;
+    private int ignoredArrayDepth;
+
+    public IncrementalReportParser() {
+        try {
+            parser = FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /** Feeds the next streamed fragment and returns the pieces it completed. */
+    public List<Event> feed(String fragment) {
+        List<Event> events = new ArrayList<>();
+        if (fragment == null || fragment.isEmpty()) return events;
+        text.append(fragment);
+        if (done || failed) return events;
+
+        String input = fragment;
+        if (!started) {
+            int start = input.indexOf('{');
+            if (start < 0) return events;
+            input = input.substring(start);
+            started = true;
+        }
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while (!done && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                handle(token, events);
+            }
+        } catch (IOException e) {
+            failed = true;
+        }
+        return events;
+    }
+
+    /** Everything fed so far, verbatim. */
+    public String text() {
+        return text.toString();
+    }
+
+    public boolean isComplete() {
+        return done;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    private void handle(JsonToken token, List<Event> events) throws IOException {
+        if (entry != null) {
+            captureEntry(token, events);
+            return;
+        }
+        switch (token) {
+            case FIELD_NAME -> currentField = parser.currentName();
+            case START_OBJECT -> {
+                objects.push(objects.isEmpty() ? "" : String.valueOf(currentField));
+                if (objects.size() == 2 && "patient".equals(currentField)) patient = NODES.objectNode();
+                currentField = null;
+            }
+            case END_OBJECT -> {
+                String closed = objects.pop();
+                if (objects.size() == 1 && "patient".equals(closed) && patient != null) {
+                    events.add(new Event(Kind.PATIENT, List.of(), patient));
+                    patient = null;
+                }
+                if (objects.isEmpty()) done = true;
+            }
+            case START_ARRAY -> {
+                if (insideTestSummary()) {
+                    entry = NODES.arrayNode();
+                    entryPath = testPath(currentField);
+                }
+            }
+            default -> {
+                if (token.isScalarValue() && patient != null && objects.size() == 2 && currentField != null) {
+                    patient.put(currentField, parser.getValueAsString(""));
+                }
+            }
+        }
+    }
+
+    private void captureEntry(JsonToken token, List<Event> events) throws IOException {
+        if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+            ignoredArrayDepth++;
+        } else if (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT) {
+            if (ignoredArrayDepth > 0) {
+                ignoredArrayDepth--;
+            } else {
+                events.add(new Event(Kind.TEST, entryPath, entry));
+                entry = null;
+                entryPath = null;
+            }
+        } else if (token.isScalarValue() && ignoredArrayDepth == 0) {
+            entry.add(parser.getValueAsString(""));
+        }
+    }
+
+    private boolean insideTestSummary() {
+        if (objects.size() < 2) return false;
+        Iterator<String> fromRoot = objects.descendingIterator();
+        fromRoot.next();
+        return "test_summary".equals(fromRoot.next());
+    }
+
+    private List<String> testPath(String testName) {
+        List<String> path = new ArrayList<>();
+        Iterator<String> fromRoot = objects.descendingIterator();
+        fromRoot.next();
+        fromRoot.next();
+        fromRoot.forEachRemaining(path::add);
+        path.add(testName);
+        return path;
+    }
+}
@@ -3,117 +3,96 @@ package medi.ai.mediAi_backend.util;
 import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.node.*;
 
-import java.math.BigDecimal;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LabStatusCalculator {
 
-    private static final Pattern NUM_PATTERN =
-            Pattern.compile("[-+]?\\d*\\.?\\d+(?:[eE][-+]?\\d+)?");
+    /** Distinct reference strings are few; the cap only guards against garbage input. */
+    private static final int MAX_CACHED_RANGES = 10_000;
 
     private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, ReferenceRange> ranges = new ConcurrentHashMap<>();
 
     /**
      * Takes a JSON string with test_summary entries of format:
      *   "TestName": ["value","unit","reference_range"]
      * and enriches them to:
      *   "TestName": ["value","unit","reference_range","status"]
+     * Tests may be nested in groups at any depth inside test_summary.
      */
     public String addStatuses(String json) throws Exception {
         JsonNode root = mapper.readTree(json);
-        if (!root.has("test_summary")) return json;
+        if (!enrich(root)) return json;
+        return mapper.writeValueAsString(root);
+    }
 
-        ObjectNode ts = (ObjectNode) root.get("test_summary");
+    /**
+     * Enriches the parsed report in place.
+     * @return false if there is no test_summary object
+     */
+    public boolean enrich(JsonNode root) {
+        JsonNode ts = root == null ? null : root.get("test_summary");
+        if (ts == null || !ts.isObject()) return false;
+        enrichGroup((ObjectNode) ts);
+        return true;
+    }
 
-        ts.fieldNames().forEachRemaining(testName -> {
-            ArrayNode arr = (ArrayNode) ts.get(testName);
-            if (arr == null || arr.size() < 3) return;
+    private void enrichGroup(ObjectNode group) {
+        Iterator<JsonNode> children = group.elements();
+        while (children.hasNext()) {
+            JsonNode child = children.next();
+            if (child.isObject()) {
+                enrichGroup((ObjectNode) child);
+            } else if (child.isArray()) {
+                enrichEntry((ArrayNode) child);
+            }
+        }
+    }
 
-            String valueStr = arr.get(0).asText("");
-            String unitStr  = arr.get(1).asText("");
-            String refStr   = arr.get(2).asText("");
+    /** Sets index 3 of a single ["value","unit","reference_range"] entry. */
+    public void enrichEntry(ArrayNode arr) {
+        if (arr.size() < 3 || arr.get(0).isContainerNode()) return;
 
-            String status = computeStatus(valueStr, refStr);
+        String valueStr = arr.get(0).asText("");
+        String refStr   = arr.get(2).asText("");
 
-            // ensure exactly 4 elements
-            while (arr.size() < 4) arr.add("");
-            arr.set(3, TextNode.valueOf(status));
-        });
+        String status = computeStatus(valueStr, refStr);
 
-        return mapper.writeValueAsString(root);
+        // ensure exactly 4 elements
+        while (arr.size() < 4) arr.add("");
+        arr.set(3, TextNode.valueOf(status));
     }
 
-    private String computeStatus(String valueStr, String refStr) {
-        BigDecimal value = parseNumber(valueStr);
-        if (value == null || refStr == null || refStr.isBlank()) return "";
-
-        refStr = refStr.replaceAll("\\s+", "");
-
-        // --- Range a-b ---
-        if (refStr.matches(".*[-–—].*")) {
-            String[] parts = refStr.split("[-–—]");
-            if (parts.length == 2) {
-                BigDecimal low = parseNumber(parts[0]);
-                BigDecimal high = parseNumber(parts[1]);
-                if (low != null && high != null) {
-                    if (value.compareTo(low) < 0) return "Low";
-                    if (value.compareTo(high) > 0) return "High";
-                    return "Normal";
-                }
-            }
-        }
-
-        // --- Less than or equal ---
-        if (refStr.startsWith("<=") || refStr.startsWith("≤")) {
-            BigDecimal max = parseNumber(refStr);
-            if (max != null && value.compareTo(max) > 0) return "High";
-            return "Normal";
-        }
+    String computeStatus(String valueStr, String refStr) {
+        if (refStr == null || refStr.isBlank()) return "";
 
-        // --- Strict less than ---
-        if (refStr.startsWith("<")) {
-            BigDecimal max = parseNumber(refStr);
-            if (max != null && value.compareTo(max) >= 0) return "High";
-            return "Normal";
+        ReferenceRange range = ranges.get(refStr);
+        if (range == null) {
+            if (ranges.size() >= MAX_CACHED_RANGES) ranges.clear();
+            range = ReferenceRange.parse(refStr);
+            ranges.put(refStr, range);
         }
 
-        // --- Greater than or equal ---
-        if (refStr.startsWith(">=") || refStr.startsWith("≥")) {
-            BigDecimal min = parseNumber(refStr);
-            if (min != null && value.compareTo(min) < 0) return "Low";
-            return "Normal";
+        double value = NumberScanner.parse(valueStr);
+        if (!Double.isNaN(value) && range.isNumeric()) {
+            return range.evaluate(value);
         }
+        return qualitativeStatus(valueStr);
+    }
 
-        // --- Strict greater than ---
-        if (refStr.startsWith(">")) {
-            BigDecimal min = parseNumber(refStr);
-            if (min != null && value.compareTo(min) <= 0) return "Low";
+    // --- Qualitative mappings --- (negated forms first: "non-reactive" contains "reactive")
+    private static String qualitativeStatus(String valueStr) {
+        if (valueStr == null || valueStr.isEmpty()) return "";
+        String vs = valueStr.toLowerCase(Locale.ROOT);
+        if (vs.contains("negative") || vs.contains("nonreactive") || vs.contains("non-reactive")
+                || vs.contains("non reactive") || vs.contains("notdetected") || vs.contains("not detected")
+                || vs.contains("absent"))
             return "Normal";
-        }
-
-        // --- Qualitative mappings ---
-        String vs = valueStr.toLowerCase();
         if (vs.contains("positive") || vs.contains("reactive") || vs.contains("detected") || vs.contains("present"))
             return "High";
-        if (vs.contains("negative") || vs.contains("nonreactive") || vs.contains("notdetected"))
-            return "Normal";
-
         return "";
     }
-
-    private BigDecimal parseNumber(String s) {
-        if (s == null) return null;
-        // normalize scientific notation like "1.2 x10^3"
-        s = s.replaceAll(",", "");
-        s = s.replaceAll("x10\\^", "E").replaceAll("×10\\^", "E");
-
-        Matcher m = NUM_PATTERN.matcher(s);
-        if (m.find()) {
-            try {
-                return new BigDecimal(m.group());
-            } catch (Exception ignored) { }
-        }
-        return null;
-    }
 }
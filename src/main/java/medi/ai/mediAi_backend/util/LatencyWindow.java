@@ -0,0 +1,42 @@
+package medi.ai.mediAi_backend.util;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The last N latency samples of one kind of call, for percentile-based decisions
+ * such as when to send a hedged request. Thread-safe; a percentile sorts a copy of the window.
+ */
+public class LatencyWindow {
+
+    private final long[] samples;
+    private int count;
+    private int next;
+
+    public LatencyWindow(int size) {
+        if (size <= 0) throw new IllegalArgumentException("size must be positive");
+        this.samples = new long[size];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /** Nearest-rank percentile (0 < p <= 1) of the samples in the window, null when there are fewer than minSamples. */
+    public Duration percentile(double p, int minSamples) {
+        long[] copy;
+        synchronized (this) {
+            if (count == 0 || count < minSamples) return null;
+            copy = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(copy);
+        int rank = (int) Math.ceil(p * copy.length) - 1;
+        return Duration.ofNanos(copy[Math.max(0, Math.min(copy.length - 1, rank))]);
+    }
+}
@@ -0,0 +1,124 @@
+package medi.ai.mediAi_backend.util;
+
+/**
+ * Finds and parses the first number in free text such as "13.5 g/dL", "1,200",
+ * "4.5x10^3" or "2.1E-3" without regex. Returns NaN when there is none.
+ */
+final class NumberScanner {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private NumberScanner() { }
+
+    static double parse(CharSequence s) {
+        return s == null ? Double.NaN : parse(s, 0, s.length());
+    }
+
+    static double parse(CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (isDigit(c) || (c == '.' && i + 1 < to && isDigit(s.charAt(i + 1)))) {
+                boolean negative = i > from && s.charAt(i - 1) == '-';
+                return parseAt(s, i, to, negative);
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static double parseAt(CharSequence s, int i, int to, boolean negative) {
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean overflow = false;
+        boolean seenDot = false;
+        int start = i;
+
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (isDigit(c)) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (seenDot) fractionDigits++;
+                } else {
+                    overflow = true;
+                    if (!seenDot) fractionDigits--; // dropped integer digit still scales the value
+                }
+            } else if (c == '.' && !seenDot && i + 1 < to && isDigit(s.charAt(i + 1))) {
+                seenDot = true;
+            } else if (c == ',' && !seenDot && i + 1 < to && isDigit(s.charAt(i + 1))) {
+                // thousands separator, e.g. "1,200"
+            } else {
+                break;
+            }
+        }
+
+        int exponent = 0;
+        int e = exponentStart(s, i, to);
+        if (e > 0) {
+            boolean expNegative = false;
+            if (s.charAt(e) == '-' || s.charAt(e) == '+') {
+                expNegative = s.charAt(e) == '-';
+                e++;
+            }
+            for (; e < to && isDigit(s.charAt(e)); e++) {
+                exponent = Math.min(exponent * 10 + (s.charAt(e) - '0'), 400);
+            }
+            if (expNegative) exponent = -exponent;
+        }
+
+        int scale = exponent - fractionDigits;
+        double value;
+        if (!overflow && scale >= -22 && scale <= 22) {
+            // single correctly-rounded operation, same result as Double.parseDouble
+            value = scale >= 0 ? mantissa * POW10[scale] : mantissa / POW10[-scale];
+        } else {
+            value = slowParse(s, start, i, exponent);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Index of the exponent digits (after "e", "E", "x10^", "×10^" or "*10^", spaces allowed
+     * before the multiplier), or -1.
+     */
+    private static int exponentStart(CharSequence s, int i, int to) {
+        if (i >= to) return -1;
+        char c = s.charAt(i);
+        if ((c == 'e' || c == 'E') && i + 1 < to && (isDigit(s.charAt(i + 1)) || isSignedDigit(s, i + 1, to))) {
+            return i + 1;
+        }
+        int j = i;
+        while (j < to && s.charAt(j) == ' ') j++;
+        if (j < to && (s.charAt(j) == 'x' || s.charAt(j) == 'X' || s.charAt(j) == '×' || s.charAt(j) == '*')) {
+            j++;
+            while (j < to && s.charAt(j) == ' ') j++;
+            if (j + 2 < to && s.charAt(j) == '1' && s.charAt(j + 1) == '0' && s.charAt(j + 2) == '^'
+                    && j + 3 < to && (isDigit(s.charAt(j + 3)) || isSignedDigit(s, j + 3, to))) {
+                return j + 3;
+            }
+        }
+        return -1;
+    }
+
+    private static double slowParse(CharSequence s, int start, int end, int exponent) {
+        StringBuilder sb = new StringBuilder(end - start + 8);
+        for (int k = start; k < end; k++) {
+            char c = s.charAt(k);
+            if (c != ',') sb.append(c);
+        }
+        return Double.parseDouble(sb.append('E').append(exponent).toString());
+    }
+
+    private static boolean isSignedDigit(CharSequence s, int i, int to) {
+        char c = s.charAt(i);
+        return (c == '-' || c == '+') && i + 1 < to && isDigit(s.charAt(i + 1));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
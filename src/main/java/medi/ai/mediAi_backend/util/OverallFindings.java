@@ -0,0 +1,149 @@
+package medi.ai.mediAi_backend.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the compact input for the findings call and merges the returned
+ * overall_finding array back into the enriched report, so the model never
+ * rewrites test_summary.
+ */
+public class OverallFindings {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Reduces the enriched report to demographics plus the tests flagged High/Low:
+     * {"patient":{...},"abnormal_tests":{"Group / Test":["value","unit","range","status"]},"normal_test_count":n}
+     */
+    public String compactInput(String enrichedJson) throws JsonProcessingException {
+        JsonNode root = mapper.readTree(enrichedJson);
+        ObjectNode out = mapper.createObjectNode();
+        out.set("patient", root.path("patient").isObject() ? root.get("patient") : mapper.createObjectNode());
+        ObjectNode abnormal = out.putObject("abnormal_tests");
+        int[] normal = {0};
+        JsonNode ts = root.get("test_summary");
+        if (ts != null && ts.isObject()) {
+            collect(ts, "", abnormal, normal);
+        }
+        out.put("normal_test_count", normal[0]);
+        return mapper.writeValueAsString(out);
+    }
+
+    private static void collect(JsonNode group, String prefix, ObjectNode abnormal, int[] normal) {
+        Iterator<Map.Entry<String, JsonNode>> fields = group.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = prefix.isEmpty() ? field.getKey() : prefix + " / " + field.getKey();
+            JsonNode child = field.getValue();
+            if (child.isObject()) {
+                collect(child, name, abnormal, normal);
+            } else if (child.isArray()) {
+                String status = child.path(3).asText("");
+                if ("High".equals(status) || "Low".equals(status)) {
+                    abnormal.set(name, child);
+                } else {
+                    normal[0]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Canonical key for reports that should get the same findings: gender, age bucket and the
+     * sorted High/Low tests, e.g. "f|40-59|hemoglobin=Low;lipid profile / ldl=High".
+     * Values and the patient's name are deliberately left out.
+     */
+    public String signature(String enrichedJson) throws JsonProcessingException {
+        JsonNode root = mapper.readTree(enrichedJson);
+        ObjectNode abnormal = mapper.createObjectNode();
+        JsonNode ts = root.get("test_summary");
+        if (ts != null && ts.isObject()) {
+            collect(ts, "", abnormal, new int[1]);
+        }
+        List<String> tests = new ArrayList<>();
+        abnormal.fields().forEachRemaining(e ->
+                tests.add(normalizeName(e.getKey()) + "=" + e.getValue().path(3).asText()));
+        Collections.sort(tests);
+
+        JsonNode patient = root.path("patient");
+        return gender(patient.path("gender").asText("")) + "|" + ageBucket(patient.path("age").asText(""))
+                + "|" + String.join(";", tests);
+    }
+
+    private static String normalizeName(String name) {
+        return WHITESPACE.matcher(name.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    private static String gender(String gender) {
+        String g = gender.trim().toLowerCase(Locale.ROOT);
+        if (g.startsWith("f") || g.startsWith("w")) return "f";
+        if (g.startsWith("m")) return "m";
+        return "u";
+    }
+
+    /** Values in months, weeks or days are children regardless of the number. */
+    private static String ageBucket(String age) {
+        double years = NumberScanner.parse(age);
+        if (Double.isNaN(years)) return "unknown";
+        String unit = age.toLowerCase(Locale.ROOT);
+        if (unit.contains("month") || unit.contains("week") || unit.contains("day") || years < 18) return "0-17";
+        if (years < 40) return "18-39";
+        if (years < 60) return "40-59";
+        return "60+";
+    }
+
+    /**
+     * Extracts the findings from model output, {"overall_finding":[...]} or a bare array,
+     * as a JSON array of trimmed, non-blank strings.
+     * @throws IllegalArgumentException when the model output holds no findings
+     */
+    public String findingsArray(String modelOutput) throws JsonProcessingException {
+        JsonNode parsed = mapper.readTree(modelOutput);
+        JsonNode findings = parsed.isArray() ? parsed : parsed.path("overall_finding");
+        ArrayNode cleaned = mapper.createArrayNode();
+        if (findings.isArray()) {
+            findings.forEach(f -> {
+                if (f.isTextual() && !f.asText().isBlank()) cleaned.add(f.asText().trim());
+            });
+        }
+        if (cleaned.isEmpty()) {
+            throw new IllegalArgumentException("Model output has no overall_finding array");
+        }
+        return mapper.writeValueAsString(cleaned);
+    }
+
+    /**
+     * Inserts the findings right after "patient" (or first, without one), replacing any existing array.
+     * Accepts {"overall_finding":[...]} or a bare array.
+     * @throws IllegalArgumentException when the model output holds no findings
+     */
+    public String merge(String enrichedJson, String modelOutput) throws JsonProcessingException {
+        JsonNode cleaned = mapper.readTree(findingsArray(modelOutput));
+
+        JsonNode root = mapper.readTree(enrichedJson);
+        ObjectNode merged = mapper.createObjectNode();
+        if (!root.has("patient")) merged.set("overall_finding", cleaned);
+        Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if ("overall_finding".equals(field.getKey())) continue;
+            merged.set(field.getKey(), field.getValue());
+            if ("patient".equals(field.getKey())) merged.set("overall_finding", cleaned);
+        }
+        return mapper.writeValueAsString(merged);
+    }
+}
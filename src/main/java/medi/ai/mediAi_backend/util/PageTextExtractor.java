@@ -0,0 +1,114 @@
+package medi.ai.mediAi_backend.util;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the text layer of a single PDF page, keeping table rows together.
+ * Glyphs are grouped into rows by baseline and ordered left to right; wide horizontal
+ * gaps (and runs of 3+ spaces) become " | " so columns such as value, unit and
+ * reference range stay distinguishable.
+ * Not thread-safe: use one instance per document/worker.
+ */
+public class PageTextExtractor extends PDFTextStripper {
+
+    private static final String COLUMN = " | ";
+    private static final Pattern SPACE_RUN = Pattern.compile(" {3,}");
+
+    private final List<TextPosition> glyphs = new ArrayList<>();
+
+    public PageTextExtractor() throws IOException {
+        setSortByPosition(true);
+    }
+
+    /** @param pageIndex 0-based */
+    public String extract(PDDocument doc, int pageIndex) throws IOException {
+        glyphs.clear();
+        setStartPage(pageIndex + 1);
+        setEndPage(pageIndex + 1);
+        getText(doc); // output is ignored; writeString collects the glyphs
+        return layout(glyphs);
+    }
+
+    @Override
+    protected void writeString(String text, List<TextPosition> positions) {
+        glyphs.addAll(positions);
+    }
+
+    /**
+     * A page counts as text-rich when it has at least minChars letters/digits and
+     * the layer is not garbage (fonts without a Unicode mapping yield U+FFFD or symbols).
+     */
+    public static boolean isTextRich(String text, int minChars) {
+        int alnum = 0;
+        int visible = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) continue;
+            visible++;
+            if (Character.isLetterOrDigit(c)) alnum++;
+        }
+        return alnum >= minChars && alnum >= visible * 0.6;
+    }
+
+    public static boolean hasLetterOrDigit(String text) {
+        return text.chars().anyMatch(Character::isLetterOrDigit);
+    }
+
+    static String layout(List<TextPosition> glyphs) {
+        List<TextPosition> sorted = new ArrayList<>(glyphs);
+        sorted.sort(Comparator.comparingDouble(TextPosition::getYDirAdj).thenComparingDouble(TextPosition::getXDirAdj));
+
+        StringBuilder out = new StringBuilder();
+        List<TextPosition> row = new ArrayList<>();
+        float rowY = Float.NaN;
+        for (TextPosition g : sorted) {
+            float tolerance = Math.max(2f, g.getHeightDir() * 0.5f);
+            if (!row.isEmpty() && Math.abs(g.getYDirAdj() - rowY) > tolerance) {
+                appendRow(out, row);
+                row.clear();
+            }
+            if (row.isEmpty()) rowY = g.getYDirAdj();
+            row.add(g);
+        }
+        appendRow(out, row);
+        return out.toString();
+    }
+
+    private static void appendRow(StringBuilder out, List<TextPosition> row) {
+        if (row.isEmpty()) return;
+        row.sort(Comparator.comparingDouble(TextPosition::getXDirAdj));
+        StringBuilder line = new StringBuilder();
+        TextPosition prev = null;
+        for (TextPosition g : row) {
+            if (prev != null) {
+                float space = spaceWidth(prev);
+                float gap = g.getXDirAdj() - (prev.getXDirAdj() + prev.getWidthDirAdj());
+                if (gap > space * 3) {
+                    line.append(COLUMN);
+                } else if (gap > space * 0.3f) {
+                    line.append(' ');
+                }
+            }
+            line.append(g.getUnicode());
+            prev = g;
+        }
+        String text = SPACE_RUN.matcher(line).replaceAll(COLUMN).trim();
+        if (!text.isEmpty()) {
+            if (out.length() > 0) out.append('\n');
+            out.append(text);
+        }
+    }
+
+    private static float spaceWidth(TextPosition g) {
+        float space = g.getWidthOfSpace();
+        return space > 0 && !Float.isNaN(space) ? space : Math.max(1f, g.getWidthDirAdj());
+    }
+}
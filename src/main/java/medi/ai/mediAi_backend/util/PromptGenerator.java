@@ -3,10 +3,20 @@ package medi.ai.mediAi_backend.util;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class PromptGenerator {
+
+    // prompt files ship in the jar and never change at runtime, so each is read once
+    private final Map<String, String> prompts = new ConcurrentHashMap<>();
+
     public String loadPromptText(String path) {
+        return prompts.computeIfAbsent(path, this::read);
+    }
+
+    private String read(String path) {
         try (var is = this.getClass().getResourceAsStream(path)) {
             if (is == null) return "";
             byte[] bs = is.readAllBytes();
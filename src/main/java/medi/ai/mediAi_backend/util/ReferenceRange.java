@@ -0,0 +1,130 @@
+package medi.ai.mediAi_backend.util;
+
+/**
+ * A reference range parsed once from its raw text, e.g. "13-17", "<=5", "> 40".
+ * Evaluation is a couple of primitive comparisons; no regex or BigDecimal per value.
+ * Labelled or multiple ranges ("M: 13-17, F: 12-15", "Adult 10-40") have no numeric rule:
+ * picking one would judge e.g. a female patient against the male range.
+ */
+public final class ReferenceRange {
+
+    enum Kind { INTERVAL, MAX, MIN, NONE }
+
+    static final ReferenceRange NONE = new ReferenceRange(Kind.NONE, Double.NaN, Double.NaN, false);
+
+    private final Kind kind;
+    private final double low;
+    private final double high;
+    /** true for "<" / ">" (bound itself is out of range). */
+    private final boolean strict;
+
+    private ReferenceRange(Kind kind, double low, double high, boolean strict) {
+        this.kind = kind;
+        this.low = low;
+        this.high = high;
+        this.strict = strict;
+    }
+
+    public boolean isNumeric() {
+        return kind != Kind.NONE;
+    }
+
+    /** Low / High / Normal for a numeric value. Unparseable bounds count as Normal. */
+    public String evaluate(double value) {
+        switch (kind) {
+            case INTERVAL:
+                if (value < low) return "Low";
+                if (value > high) return "High";
+                return "Normal";
+            case MAX:
+                if (strict ? value >= high : value > high) return "High";
+                return "Normal";
+            case MIN:
+                if (strict ? value <= low : value < low) return "Low";
+                return "Normal";
+            default:
+                return "";
+        }
+    }
+
+    public static ReferenceRange parse(String raw) {
+        if (raw == null) return NONE;
+        String ref = stripWhitespace(raw);
+        if (ref.isEmpty() || hasLabel(ref)) return NONE;
+
+        // --- Range a-b --- (a dash directly after a digit separates the bounds; a leading dash is a sign)
+        int sep = rangeSeparator(ref, 1);
+        if (sep > 0) {
+            if (rangeSeparator(ref, sep + 1) > 0) return NONE; // more than one interval
+            double low = NumberScanner.parse(ref, 0, sep);
+            double high = NumberScanner.parse(ref, sep + 1, ref.length());
+            if (!Double.isNaN(low) && !Double.isNaN(high)) {
+                return new ReferenceRange(Kind.INTERVAL, low, high, false);
+            }
+        }
+
+        char c0 = ref.charAt(0);
+        boolean orEqual = ref.length() > 1 && ref.charAt(1) == '=';
+        // --- Less than (or equal) ---
+        if (c0 == '≤' || c0 == '<') {
+            return new ReferenceRange(Kind.MAX, Double.NaN, NumberScanner.parse(ref), c0 == '<' && !orEqual);
+        }
+        // --- Greater than (or equal) ---
+        if (c0 == '≥' || c0 == '>') {
+            return new ReferenceRange(Kind.MIN, NumberScanner.parse(ref), Double.NaN, c0 == '>' && !orEqual);
+        }
+        return NONE;
+    }
+
+    /**
+     * A ':' anywhere, or a letter before the first digit (sex, age group or other qualifier).
+     * Text without any digit (e.g. "<abc") is not a label; it just has no usable bound.
+     */
+    private static boolean hasLabel(String s) {
+        boolean digitSeen = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ':') return true;
+            if (c >= '0' && c <= '9') digitSeen = true;
+            else if (!digitSeen && Character.isLetter(c)) return hasDigit(s, i + 1);
+        }
+        return false;
+    }
+
+    private static boolean hasDigit(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') return true;
+        }
+        return false;
+    }
+
+    private static int rangeSeparator(String s, int from) {
+        for (int i = Math.max(1, from); i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '-' || c == '–' || c == '—') {
+                char prev = s.charAt(i - 1);
+                if ((prev >= '0' && prev <= '9') || prev == '.') return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String stripWhitespace(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (sb == null) sb = new StringBuilder(s.length()).append(s, 0, i);
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return kind + "[" + low + ", " + high + (strict ? ", strict]" : "]");
+    }
+}
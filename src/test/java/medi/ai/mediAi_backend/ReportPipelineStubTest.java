@@ -0,0 +1,187 @@
+package medi.ai.mediAi_backend;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import medi.ai.mediAi_backend.service.OpenAiStubServer;
+import medi.ai.mediAi_backend.service.ReportPublisher;
+import medi.ai.mediAi_backend.service.ReportResultStore;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/** The whole upload pipeline against the local OpenAI stub, including a rate-limited first call. */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ReportPipelineStubTest {
+
+    static final OpenAiStubServer stub;
+
+    static {
+        try {
+            stub = new OpenAiStubServer().latency(Duration.ofMillis(20), 0.3);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void openAi(DynamicPropertyRegistry registry) {
+        registry.add("app.openai.base-url", stub::baseUrl);
+        registry.add("app.openai.api-key", () -> "test");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ReportPublisher reportPublisher;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void uploadIsExtractedEnrichedAndGetsFindingsAfterA429() throws Exception {
+        stub.failNext(1, 429);
+        WebClient client = WebClient.create("http://localhost:" + port + "/api/reports");
+
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("file", new ByteArrayResource(reportImage("pipeline stub test")) {
+            @Override
+            public String getFilename() {
+                return "report.png";
+            }
+        }).contentType(MediaType.IMAGE_PNG);
+        Map<?, ?> ack = client.post().uri("/upload?userId=stub-user")
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .retrieve()
+                .bodyToMono(Map.class)
+                .block(Duration.ofSeconds(10));
+        assertEquals("stub-user", ack.get("userId"));
+
+        JsonNode report = awaitFinal(client, "stub-user", (String) ack.get("jobId"), Duration.ofSeconds(20));
+        assertEquals("Low", report.at("/test_summary/Hemoglobin/3").asText());
+        assertEquals("High", report.at("/test_summary/Lipid Profile/LDL/3").asText());
+        assertEquals(2, report.get("overall_finding").size());
+        assertEquals(1, stub.responses("429"));
+        assertEquals(1, stub.responses("extraction"));
+        assertEquals(1, stub.responses("findings"));
+    }
+
+    @Test
+    void storedStateIsReplayedOnlyToTheNewSubscriber() throws Exception {
+        reportPublisher.publish("replay-user", "replay-job", ReportResultStore.Stage.FINAL, "{\"overall_finding\":[]}");
+        WebSocketStompClient stomp = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stomp.setMessageConverter(new StringMessageConverter());
+        BlockingQueue<String> first = new LinkedBlockingQueue<>();
+        BlockingQueue<String> second = new LinkedBlockingQueue<>();
+        StompSession tab1 = subscribe(stomp, "replay-user", first);
+        StompSession tab2 = null;
+        try {
+            assertEquals("{\"overall_finding\":[]}", first.poll(5, TimeUnit.SECONDS));
+            tab2 = subscribe(stomp, "replay-user", second);
+            assertEquals("{\"overall_finding\":[]}", second.poll(5, TimeUnit.SECONDS));
+            assertNull(first.poll(500, TimeUnit.MILLISECONDS), "existing subscriber got the replay again");
+        } finally {
+            tab1.disconnect();
+            if (tab2 != null) tab2.disconnect();
+            stomp.stop();
+        }
+    }
+
+    private StompSession subscribe(WebSocketStompClient stomp, String userId, BlockingQueue<String> received) throws Exception {
+        StompSession session = stomp.connectAsync("http://localhost:" + port + "/ws", new StompSessionHandlerAdapter() { })
+                .get(10, TimeUnit.SECONDS);
+        session.subscribe("/medicalReportTopic/" + userId, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return String.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((String) payload);
+            }
+        });
+        return session;
+    }
+
+    private JsonNode awaitFinal(WebClient client, String userId, String jobId, Duration timeout) throws Exception {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                JsonNode state = client.get().uri("/results/{userId}/{jobId}", userId, jobId)
+                        .retrieve()
+                        .bodyToMono(JsonNode.class)
+                        .block(Duration.ofSeconds(5));
+                String stage = state.get("stage").asText();
+                if ("ERROR".equals(stage)) fail("pipeline failed: " + state.get("result").asText());
+                if ("FINAL".equals(stage)) return mapper.readTree(state.get("result").asText());
+            } catch (WebClientResponseException.NotFound ignored) {
+                // nothing published yet
+            }
+            Thread.sleep(50);
+        }
+        return fail("no FINAL result within " + timeout);
+    }
+
+    static byte[] reportImage(String label) throws IOException {
+        BufferedImage image = new BufferedImage(800, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setColor(Color.BLACK);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 22));
+        g.drawString(label, 60, 80);
+        String[] rows = {"Hemoglobin   10.1  g/dL   12-15", "LDL          180   mg/dL  <100",
+                "HDL          55    mg/dL  >40", "Glucose      92    mg/dL  70-100"};
+        for (int i = 0; i < rows.length; i++) {
+            g.drawString(rows[i], 60, 160 + i * 40);
+        }
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,300 @@
+package medi.ai.mediAi_backend;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import medi.ai.mediAi_backend.service.OpenAiStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Load harness: concurrent multipart uploads, each with its own STOMP subscription, against the
+ * local OpenAI stub. Reports throughput, end-to-end latency percentiles (ack, partial, final),
+ * per-stage timer percentiles, peak heap and peak threads, and writes them to target/load-test-report.json.
+ * Excluded from the default build; run with
+ * <pre>mvn -Pload-test test -Dload.uploads=500 -Dload.concurrency=64 -Dload.latency-ms=800</pre>
+ * Other knobs: load.latency-sigma, load.rate-limit-ratio, load.server-error-ratio, load.findings-cache,
+ * and any app.* property as a system property (e.g. -Dapp.openai.limits.requests-per-minute=5000).
+ */
+@Tag("load")
+// the Prometheus registry keeps the percentile histograms the stage percentiles are read from
+@AutoConfigureObservability(tracing = false)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ReportUploadLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportUploadLoadTest.class);
+
+    private static final int UPLOADS = Integer.getInteger("load.uploads", 100);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 16);
+    private static final Duration TIMEOUT = Duration.ofSeconds(Long.getLong("load.timeout-seconds", 300));
+
+    static final OpenAiStubServer stub;
+
+    static {
+        try {
+            stub = new OpenAiStubServer()
+                    .latency(Duration.ofMillis(Long.getLong("load.latency-ms", 800)),
+                            Double.parseDouble(System.getProperty("load.latency-sigma", "0.5")))
+                    .errors(Double.parseDouble(System.getProperty("load.rate-limit-ratio", "0.02")),
+                            Double.parseDouble(System.getProperty("load.server-error-ratio", "0.01")));
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void openAi(DynamicPropertyRegistry registry) {
+        registry.add("app.openai.base-url", stub::baseUrl);
+        registry.add("app.openai.api-key", () -> "test");
+        // every upload has the same abnormal tests; without this only the first one calls the model for findings
+        registry.add("app.cache.findings.enabled", () -> System.getProperty("load.findings-cache", "false"));
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /** Milliseconds from the start of the upload; -1 when the event was not seen. */
+    private record Sample(long ackMs, long partialMs, long finalMs, String outcome) { }
+
+    @Test
+    void concurrentUploads() throws Exception {
+        WebClient http = WebClient.create("http://localhost:" + port + "/api/reports");
+        WebSocketStompClient stomp = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stomp.setMessageConverter(new StringMessageConverter());
+
+        List<byte[]> images = new ArrayList<>(UPLOADS);
+        for (int i = 0; i < UPLOADS; i++) {
+            // distinct bytes per upload so the extraction cache does not short-circuit the run
+            images.add(ReportPipelineStubTest.reportImage("load test report #" + i));
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicLong peakHeap = new AtomicLong();
+        threads.resetPeakThreadCount();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 100, TimeUnit.MILLISECONDS);
+
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        long start = System.nanoTime();
+        List<Future<Sample>> futures = new ArrayList<>();
+        for (int i = 0; i < UPLOADS; i++) {
+            int index = i;
+            futures.add(clients.submit(() -> runUpload(http, stomp, "load-" + index, images.get(index))));
+        }
+        List<Sample> samples = new ArrayList<>();
+        for (Future<Sample> future : futures) {
+            samples.add(future.get());
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        clients.shutdown();
+        sampler.shutdown();
+        stomp.stop();
+
+        Map<String, Object> report = report(samples, elapsedMs, peakHeap.get(), threads.getPeakThreadCount());
+        String json = mapper.writeValueAsString(report);
+        Files.writeString(Path.of("target", "load-test-report.json"), json);
+        log.info("Load test report:\n{}", json);
+
+        assertEquals(UPLOADS, samples.stream().filter(s -> !"timeout".equals(s.outcome())).count(),
+                "uploads without a final STOMP message");
+    }
+
+    private Sample runUpload(WebClient http, WebSocketStompClient stomp, String userId, byte[] image) throws Exception {
+        CompletableFuture<String> done = new CompletableFuture<>();
+        AtomicLong partialAt = new AtomicLong(-1);
+        long start = System.nanoTime();
+        StompSession session = stomp.connectAsync("http://localhost:" + port + "/ws", new StompSessionHandlerAdapter() { })
+                .get(10, TimeUnit.SECONDS);
+        try {
+            session.subscribe("/medicalReportTopic/" + userId, new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    return String.class;
+                }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    try {
+                        JsonNode message = mapper.readTree((String) payload);
+                        if (message.has("error")) done.complete("error");
+                        else if (message.has("overall_finding")) done.complete("final");
+                        else if (message.has("test_summary")) partialAt.compareAndSet(-1, System.nanoTime());
+                    } catch (IOException e) {
+                        done.complete("bad_message");
+                    }
+                }
+            });
+
+            long ackAt;
+            try {
+                http.post().uri("/upload?userId={userId}", userId)
+                        .body(BodyInserters.fromMultipartData(multipart(image)))
+                        .retrieve()
+                        .toBodilessEntity()
+                        .block(Duration.ofSeconds(30));
+                ackAt = System.nanoTime();
+            } catch (WebClientResponseException e) {
+                return new Sample(ms(start, System.nanoTime()), -1, -1, "http_" + e.getStatusCode().value());
+            }
+
+            String outcome;
+            try {
+                outcome = done.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                outcome = "timeout";
+            }
+            long finalAt = System.nanoTime();
+            return new Sample(ms(start, ackAt), partialAt.get() < 0 ? -1 : ms(start, partialAt.get()),
+                    "timeout".equals(outcome) ? -1 : ms(start, finalAt), outcome);
+        } finally {
+            session.disconnect();
+        }
+    }
+
+    private static MultiValueMap<String, HttpEntity<?>> multipart(byte[] image) {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("file", new ByteArrayResource(image) {
+            @Override
+            public String getFilename() {
+                return "report.png";
+            }
+        }).contentType(MediaType.IMAGE_PNG);
+        return body.build();
+    }
+
+    private Map<String, Object> report(List<Sample> samples, long elapsedMs, long peakHeap, int peakThreads) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("uploads", samples.size());
+        report.put("concurrency", CONCURRENCY);
+        report.put("elapsedMs", elapsedMs);
+        report.put("throughputPerSecond", Math.round(samples.size() * 10_000.0 / Math.max(1, elapsedMs)) / 10.0);
+        Map<String, Long> outcomes = new LinkedHashMap<>();
+        samples.forEach(s -> outcomes.merge(s.outcome(), 1L, Long::sum));
+        report.put("outcomes", outcomes);
+
+        Map<String, Object> endToEnd = new LinkedHashMap<>();
+        endToEnd.put("ack", percentiles(samples.stream().map(Sample::ackMs).toList()));
+        endToEnd.put("partial", percentiles(samples.stream().map(Sample::partialMs).toList()));
+        endToEnd.put("final", percentiles(samples.stream().map(Sample::finalMs).toList()));
+        report.put("latencyMs", endToEnd);
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (Timer timer : meterRegistry.find("report.stage").timers()) {
+            stages.put(timer.getId().getTag("stage"), timerView(timer));
+        }
+        for (Timer timer : meterRegistry.find("openai.call").timers()) {
+            stages.put("openai." + timer.getId().getTag("call_type") + "." + timer.getId().getTag("outcome"), timerView(timer));
+        }
+        report.put("stagesMs", stages);
+
+        report.put("openAiStub", Map.of("requests", stub.requests(),
+                "429", stub.responses("429"), "503", stub.responses("503")));
+        report.put("peakHeapMb", peakHeap / (1024 * 1024));
+        report.put("peakThreads", peakThreads);
+        return report;
+    }
+
+    private static Map<String, Object> percentiles(List<Long> values) {
+        List<Long> seen = new ArrayList<>(values.stream().filter(v -> v >= 0).toList());
+        Collections.sort(seen);
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("count", seen.size());
+        if (seen.isEmpty()) return view;
+        for (double p : new double[]{0.5, 0.9, 0.95, 0.99}) {
+            view.put("p" + Math.round(p * 100), seen.get((int) Math.min(seen.size() - 1, Math.ceil(p * seen.size()) - 1)));
+        }
+        view.put("max", seen.get(seen.size() - 1));
+        return view;
+    }
+
+    /** Percentiles from the timer's histogram buckets (upper bound of the bucket holding the percentile, capped at max). */
+    private static Map<String, Object> timerView(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("count", snapshot.count());
+        view.put("mean", Math.round(snapshot.mean(TimeUnit.MILLISECONDS)));
+        CountAtBucket[] buckets = snapshot.histogramCounts();
+        for (double p : new double[]{0.5, 0.95, 0.99}) {
+            for (CountAtBucket bucket : buckets) {
+                if (bucket.count() >= p * snapshot.count()) {
+                    double upper = Math.min(bucket.bucket(TimeUnit.MILLISECONDS), snapshot.max(TimeUnit.MILLISECONDS));
+                    view.put("p" + Math.round(p * 100), Math.round(upper));
+                    break;
+                }
+            }
+        }
+        view.put("max", Math.round(snapshot.max(TimeUnit.MILLISECONDS)));
+        return view;
+    }
+
+    private static long ms(long from, long to) {
+        return TimeUnit.NANOSECONDS.toMillis(to - from);
+    }
+}
@@ -0,0 +1,154 @@
+package medi.ai.mediAi_backend;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import medi.ai.mediAi_backend.service.OpenAiStubServer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Cold-start timings: application startup (including the warm-up), each warm-up step, and the
+ * end-to-end latency of the first and second PDF upload against the local OpenAI stub.
+ * Written to target/startup-timing.json. Only meaningful in a fresh JVM, so it is excluded from
+ * the default build; run with
+ * <pre>mvn -Pstartup-test test</pre>
+ * and compare with -Dapp.warmup.enabled=false to see what the warm-up moves off the first request.
+ */
+@Tag("startup")
+class StartupTimingTest {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupTimingTest.class);
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @Test
+    void startupAndFirstRequest() throws Exception {
+        try (OpenAiStubServer stub = new OpenAiStubServer().latency(Duration.ofMillis(20), 0.1)) {
+            long start = System.nanoTime();
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(MediAiBackendApplication.class)
+                    .run("--server.port=0",
+                            "--app.openai.base-url=" + stub.baseUrl(),
+                            "--app.openai.api-key=test",
+                            "--app.cache.findings.enabled=false",
+                            "--app.warmup.enabled=" + System.getProperty("app.warmup.enabled", "true"));
+            long startupMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            try {
+                WebClient client = WebClient.create("http://localhost:"
+                        + context.getEnvironment().getProperty("local.server.port") + "/api/reports");
+                MeterRegistry registry = context.getBean(MeterRegistry.class);
+                long firstMs = upload(client, "startup-1", reportPdf("first upload"));
+                Map<String, Long> firstStages = stageTotals(registry);
+                long secondMs = upload(client, "startup-2", reportPdf("second upload"));
+                Map<String, Long> secondStages = stageTotals(registry);
+                secondStages.replaceAll((stage, total) -> total - firstStages.getOrDefault(stage, 0L));
+
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("startupMs", startupMs);
+                Map<String, Long> warmup = new LinkedHashMap<>();
+                for (Timer timer : registry.find("app.warmup").timers()) {
+                    warmup.put(timer.getId().getTag("step"), (long) timer.totalTime(TimeUnit.MILLISECONDS));
+                }
+                report.put("warmupMs", warmup);
+                report.put("firstRequestMs", firstMs);
+                report.put("secondRequestMs", secondMs);
+                report.put("firstRequestStagesMs", firstStages);
+                report.put("secondRequestStagesMs", secondStages);
+                String json = mapper.writeValueAsString(report);
+                Files.writeString(Path.of("target", "startup-timing.json"), json);
+                log.info("Startup timing:\n{}", json);
+
+                assertEquals(2, stub.responses("extraction"));
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    private static Map<String, Long> stageTotals(MeterRegistry registry) {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (Timer timer : registry.find("report.stage").timers()) {
+            totals.put(timer.getId().getTag("stage"), (long) timer.totalTime(TimeUnit.MILLISECONDS));
+        }
+        return totals;
+    }
+
+    /** Milliseconds from the upload until its FINAL result can be read. */
+    private long upload(WebClient client, String userId, byte[] pdf) throws Exception {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("file", new ByteArrayResource(pdf) {
+            @Override
+            public String getFilename() {
+                return "report.pdf";
+            }
+        }).contentType(MediaType.APPLICATION_PDF);
+        long start = System.nanoTime();
+        client.post().uri("/upload?userId={userId}", userId)
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .retrieve()
+                .toBodilessEntity()
+                .block(Duration.ofSeconds(30));
+        long deadline = start + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            try {
+                JsonNode state = client.get().uri("/results/{userId}", userId)
+                        .retrieve()
+                        .bodyToMono(JsonNode.class)
+                        .block(Duration.ofSeconds(5));
+                String stage = state.get("stage").asText();
+                if ("ERROR".equals(stage)) fail("pipeline failed: " + state.get("result").asText());
+                if ("FINAL".equals(stage)) return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            } catch (WebClientResponseException.NotFound ignored) {
+                // nothing published yet
+            }
+            Thread.sleep(10);
+        }
+        return fail("no FINAL result for " + userId);
+    }
+
+    /** A short digital PDF: too little text for the text layer, so the page is rendered. */
+    private static byte[] reportPdf(String label) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 14);
+                content.newLineAtOffset(60, 700);
+                content.showText(label + ": Hemoglobin 10.1 g/dL 12-15");
+                content.endText();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+}
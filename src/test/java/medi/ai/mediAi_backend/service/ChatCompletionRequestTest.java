@@ -0,0 +1,165 @@
+package medi.ai.mediAi_backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatCompletionRequestTest {
+
+    private static final int PAGES = 30;
+    private static final int CHUNK = 48 * 1024;
+
+    @Test
+    void streamsLargePdfWithBoundedBuffering() throws Exception {
+        List<RenderedPage> pages = renderSyntheticPdf();
+        long pageBytes = pages.stream().mapToLong(p -> p.getBytes().length).sum();
+        long largestPage = pages.stream().mapToLong(p -> p.getBytes().length).max().orElseThrow();
+
+        List<ChatCompletionRequest.Part> parts = new ArrayList<>();
+        parts.add(ChatCompletionRequest.Part.text("Extract \"all\" tests"));
+        pages.forEach(p -> parts.add(ChatCompletionRequest.Part.image(p.getMimeType(), p.getBytes())));
+        ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o-mini", 2000)
+                .system("system prompt")
+                .user(parts);
+
+        // Tracks bytes handed out by the factory that the consumer has not yet taken.
+        AtomicLong outstanding = new AtomicLong();
+        AtomicLong peak = new AtomicLong();
+        DefaultDataBufferFactory factory = new DefaultDataBufferFactory() {
+            @Override
+            public DefaultDataBuffer allocateBuffer(int initialCapacity) {
+                track(initialCapacity);
+                return super.allocateBuffer(initialCapacity);
+            }
+
+            @Override
+            public DefaultDataBuffer wrap(byte[] bytes) {
+                track(bytes.length);
+                return super.wrap(bytes);
+            }
+
+            private void track(int n) {
+                peak.accumulateAndGet(outstanding.addAndGet(n), Math::max);
+            }
+        };
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        request.toDataBuffers(factory, CHUNK).subscribe(new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(DataBuffer buffer) {
+                int n = buffer.readableByteCount();
+                byte[] bytes = new byte[n];
+                buffer.read(bytes);
+                body.writeBytes(bytes);
+                DataBufferUtils.release(buffer);
+                outstanding.addAndGet(-n);
+                request(1);
+            }
+        });
+
+        long bodySize = body.size();
+        assertTrue(bodySize > pageBytes * 4 / 3, "body should contain every page base64-encoded");
+        // peak buffering is one chunk (plus small JSON segments), well below one page or the whole body
+        assertTrue(peak.get() <= CHUNK * 4 / 3 + 1024, "peak buffered bytes " + peak.get());
+        assertTrue(peak.get() < largestPage, "peak should stay below a single page");
+        assertTrue(peak.get() * 50 < bodySize);
+
+        JsonNode json = new ObjectMapper().readTree(body.toByteArray());
+        assertEquals("gpt-4o-mini", json.get("model").asText());
+        assertEquals(2000, json.get("max_tokens").asInt());
+        JsonNode content = json.get("messages").get(1).get("content");
+        assertEquals("Extract \"all\" tests", content.get(0).get("text").asText());
+        assertEquals(PAGES + 1, content.size());
+        for (int i = 0; i < PAGES; i++) {
+            String url = content.get(i + 1).get("image_url").get("url").asText();
+            assertTrue(url.startsWith("data:image/png;base64,"));
+            byte[] decoded = Base64.getDecoder().decode(url.substring(url.indexOf(',') + 1));
+            assertArrayEquals(pages.get(i).getBytes(), decoded);
+        }
+    }
+
+    @Test
+    void blockingWriterMatchesStreamedBody() throws Exception {
+        byte[] image = new byte[100_001];
+        new Random(7).nextBytes(image);
+        ChatCompletionRequest request = new ChatCompletionRequest("m", 10)
+                .option("response_format", Map.of("type", "json_object"))
+                .user(List.of(ChatCompletionRequest.Part.image("image/jpeg", image)));
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        request.writeTo(written);
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        for (DataBuffer buffer : request.toDataBuffers(DefaultDataBufferFactory.sharedInstance, 999).collectList().block()) {
+            ByteBuffer bb = ByteBuffer.allocate(buffer.readableByteCount());
+            buffer.toByteBuffer(bb);
+            streamed.writeBytes(bb.array());
+        }
+
+        assertArrayEquals(written.toByteArray(), streamed.toByteArray());
+        JsonNode json = new ObjectMapper().readTree(written.toByteArray());
+        assertEquals("json_object", json.get("response_format").get("type").asText());
+    }
+
+    private static List<RenderedPage> renderSyntheticPdf() throws Exception {
+        Random random = new Random(42);
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument doc = new PDDocument()) {
+            for (int i = 0; i < PAGES; i++) {
+                // noisy scan-like image so each rendered page is large
+                BufferedImage noise = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+                for (int y = 0; y < noise.getHeight(); y++) {
+                    for (int x = 0; x < noise.getWidth(); x++) {
+                        noise.setRGB(x, y, random.nextInt(0xFFFFFF));
+                    }
+                }
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                PDImageXObject img = LosslessFactory.createFromImage(doc, noise);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    cs.drawImage(img, 50, 300, 400, 400);
+                }
+            }
+            doc.save(pdf);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PdfPageRenderer renderer = RenderFixtures.renderer(executor, ImagePreprocessor.Settings.OFF,
+                    RenderFixtures.render(72, PdfPageRenderer.Format.PNG, 4, false));
+            return renderer.render(new ReportUpload(pdf.toByteArray(), "application/pdf", "synthetic.pdf"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package medi.ai.mediAi_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExtractionCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private ExtractionCache cache(String diskDir) throws Exception {
+        ExtractionCache cache = new ExtractionCache();
+        ReflectionTestUtils.setField(cache, "maxEntries", 10);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(cache, "dir", diskDir);
+        cache.init();
+        return cache;
+    }
+
+    @Test
+    void coalescesConcurrentLoadsAndServesHitsAfterwards() throws Exception {
+        ExtractionCache cache = cache("");
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<Mono<String>> loader = () ->
+                Mono.delay(Duration.ofMillis(200)).map(t -> "{\"n\":" + calls.incrementAndGet() + "}");
+
+        Mono<String> first = cache.getOrLoad("abc", loader);
+        Mono<String> second = cache.getOrLoad("abc", loader);
+        var both = Mono.zip(first, second).block();
+
+        assertEquals(both.getT1(), both.getT2());
+        assertEquals("{\"n\":1}", cache.getOrLoad("abc", loader).block());
+        assertEquals(1, calls.get());
+        assertEquals(1L, cache.stats().get("misses"));
+        assertEquals(1L, cache.stats().get("coalesced"));
+        assertEquals(1L, cache.stats().get("hits"));
+    }
+
+    @Test
+    void diskTierSurvivesRestartAndFailuresAreNotCached() throws Exception {
+        ExtractionCache cache = cache(dir.toString());
+        cache.getOrLoad("bad", () -> Mono.error(new IllegalStateException("boom"))).onErrorResume(e -> Mono.empty()).block();
+        cache.getOrLoad("good", () -> Mono.just("{}")).block();
+        awaitFile("good.json");
+
+        ExtractionCache restarted = cache(dir.toString());
+        assertEquals("{}", restarted.getOrLoad("good", () -> Mono.error(new AssertionError("should not load"))).block());
+        assertEquals("x", restarted.getOrLoad("bad", () -> Mono.just("x")).block());
+        assertEquals(1L, restarted.stats().get("diskHits"));
+        awaitFile("bad.json"); // let the write finish before @TempDir is deleted
+    }
+
+    @Test
+    void keyChangesWithTheExtractionSettings() {
+        String upload = "ab".repeat(32);
+        String key = ExtractionCache.key(upload, "prompt", "model=gpt-4o;render=72.0,PNG");
+
+        assertEquals(key, ExtractionCache.key(upload, "prompt", "model=gpt-4o;render=72.0,PNG"));
+        assertNotEquals(key, ExtractionCache.key(upload, "prompt v2", "model=gpt-4o;render=72.0,PNG"));
+        assertNotEquals(key, ExtractionCache.key(upload, "prompt", "model=gpt-4o;render=150.0,PNG"));
+        assertNotEquals(key, ExtractionCache.key(upload, "promptmodel=gpt-4o;render=72.0,PNG", ""));
+        assertTrue(key.matches(upload + "-[0-9a-f]{16}"));
+    }
+
+    /** Disk writes are asynchronous. */
+    private void awaitFile(String name) throws InterruptedException {
+        for (int i = 0; i < 100 && !Files.exists(dir.resolve(name)); i++) {
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package medi.ai.mediAi_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FindingsCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private FindingsCache cache(int maxEntries, String file) {
+        FindingsCache cache = new FindingsCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(cache, "file", file);
+        cache.init();
+        return cache;
+    }
+
+    @Test
+    void sameSignatureSharesOneCallAndEmptyResultsAreNotCached() {
+        FindingsCache cache = cache(10, "");
+        AtomicInteger calls = new AtomicInteger();
+
+        var both = Mono.zip(
+                cache.getOrLoad("f|40-59|ldl=High", () -> Mono.delay(Duration.ofMillis(100)).map(t -> "[\"a\"]").doOnNext(v -> calls.incrementAndGet())),
+                cache.getOrLoad("f|40-59|ldl=High", () -> Mono.just("[\"b\"]").doOnNext(v -> calls.incrementAndGet())))
+                .block();
+        assertEquals("[\"a\"]", both.getT1());
+        assertEquals("[\"a\"]", both.getT2());
+        assertEquals("[\"a\"]", cache.getOrLoad("f|40-59|ldl=High", Mono::empty).block());
+        assertEquals(1, calls.get());
+
+        assertNull(cache.getOrLoad("m|60+|", Mono::empty).block());
+        assertEquals("[\"c\"]", cache.getOrLoad("m|60+|", () -> Mono.just("[\"c\"]")).block());
+        assertEquals(1L, cache.stats().get("hits"));
+        assertEquals(1L, cache.stats().get("coalesced"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndWarmStartsFromFile() {
+        String file = dir.resolve("findings.json").toString();
+        FindingsCache cache = cache(2, file);
+        cache.getOrLoad("a", () -> Mono.just("[\"a\"]")).block();
+        cache.getOrLoad("b", () -> Mono.just("[\"b\"]")).block();
+        cache.getOrLoad("a", Mono::empty).block(); // touch a, so b is the eldest
+        cache.getOrLoad("c", () -> Mono.just("[\"c\"]")).block();
+        cache.save();
+
+        FindingsCache restarted = cache(2, file);
+        assertEquals("[\"a\"]", restarted.getOrLoad("a", Mono::empty).block());
+        assertEquals("[\"c\"]", restarted.getOrLoad("c", Mono::empty).block());
+        assertNull(restarted.getOrLoad("b", Mono::empty).block());
+    }
+}
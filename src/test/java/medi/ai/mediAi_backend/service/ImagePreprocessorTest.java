@@ -0,0 +1,125 @@
+package medi.ai.mediAi_backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImagePreprocessorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private static ImagePreprocessor preprocessor(PipelineMetrics metrics) {
+        return new ImagePreprocessor(metrics, RenderFixtures.PREPROCESS);
+    }
+
+    /** A noisy "photo" of a page: white margins around a textured content block. */
+    private static BufferedImage photo(int width, int height, int margin) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        Random random = new Random(7);
+        for (int y = margin; y < height - margin; y += 4) {
+            for (int x = margin; x < width - margin; x += 4) {
+                g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+                g.fillRect(x, y, 4, 4);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    @Test
+    void uploadIsCroppedDownscaledAndReencodedSmaller() throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(photo(4000, 3000, 400), "png", png);
+        ReportUpload upload = new ReportUpload(png.toByteArray(), "image/png", "photo.png");
+
+        ImagePreprocessor.PreparedImage prepared = preprocessor(new PipelineMetrics(registry)).prepareUpload(upload);
+
+        assertNotNull(prepared);
+        assertEquals("image/jpeg", prepared.mimeType());
+        BufferedImage out = ImageIO.read(new ByteArrayInputStream(prepared.bytes()));
+        assertEquals(1600, Math.max(out.getWidth(), out.getHeight()));
+        // 3200x2200 content + 2x8 padding = 3216x2216, scaled to a 1600 long edge
+        assertEquals(1102, out.getHeight(), 2);
+        assertTrue(prepared.bytes().length < png.size());
+        assertTrue(registry.get("report.preprocess.bytes.saved").counter().count() > 0);
+    }
+
+    @Test
+    void blankPagesAndExactRepeatsAreDetected() {
+        ImagePreprocessor preprocessor = preprocessor(new PipelineMetrics(registry));
+        BufferedImage blank = photo(600, 800, 400);
+        BufferedImage page = photo(600, 800, 40);
+        BufferedImage noisy = photo(600, 800, 40);
+        noisy.setRGB(300, 300, 0); // a speck of scanner noise is already a different page
+
+        assertTrue(preprocessor.isBlank(blank));
+        assertFalse(preprocessor.isBlank(page));
+        assertTrue(ImagePreprocessor.isDuplicate(ImagePreprocessor.fingerprint(page), ImagePreprocessor.fingerprint(photo(600, 800, 40))));
+        assertFalse(ImagePreprocessor.isDuplicate(ImagePreprocessor.fingerprint(page), ImagePreprocessor.fingerprint(noisy)));
+    }
+
+    /** An A4 page at 72 dpi with one 10pt result row has only a few hundred dark pixels. */
+    @Test
+    void aSingleRowOfTextIsNotBlankEvenWithoutATextLayer() {
+        BufferedImage page = new BufferedImage(595, 842, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = page.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, page.getWidth(), page.getHeight());
+        g.setColor(Color.BLACK);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
+        g.drawString("HbA1c (Glycated Haemoglobin)      7.9      %      4.0 - 5.6", 50, 62);
+        g.dispose();
+
+        assertFalse(preprocessor(new PipelineMetrics(registry)).isBlank(page));
+    }
+
+    /** Two pages from the same lab template that differ in a single value must both be sent. */
+    @Test
+    void templatePagesWithOneDifferentValueAreKept() {
+        ImagePreprocessor preprocessor = preprocessor(new PipelineMetrics(registry));
+        List<RenderedPage> pages = new ArrayList<>();
+        String[] hemoglobin = {"13.5", "8.1", "13.5"};
+        for (int i = 0; i < hemoglobin.length; i++) {
+            BufferedImage image = preprocessor.prepare(labPage(hemoglobin[i]));
+            pages.add(new RenderedPage(i, new byte[]{(byte) i}, "image/png", 0, 0, ImagePreprocessor.fingerprint(image)));
+        }
+
+        List<RenderedPage> kept = preprocessor.dropDuplicates(pages);
+
+        assertEquals(List.of(0, 1), kept.stream().map(RenderedPage::getPageIndex).toList());
+        assertEquals(1, registry.get("report.preprocess.pages.dropped").tag("reason", "duplicate").counter().count());
+    }
+
+    private static BufferedImage labPage(String hemoglobin) {
+        BufferedImage image = new BufferedImage(612, 792, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setColor(Color.BLACK);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+        g.drawString("CITY LAB - COMPLETE BLOOD COUNT", 60, 60);
+        g.drawString("Hemoglobin        " + hemoglobin + "   g/dL   12.0-15.0", 60, 120);
+        g.drawString("WBC               7.2    10^3/uL  4.0-11.0", 60, 140);
+        g.drawString("Platelets         250    10^3/uL  150-400", 60, 160);
+        g.dispose();
+        return image;
+    }
+}
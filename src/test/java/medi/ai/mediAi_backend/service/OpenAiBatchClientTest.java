@@ -0,0 +1,154 @@
+package medi.ai.mediAi_backend.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Runs the deferred flow against a local stub of the Files and Batches endpoints. */
+class OpenAiBatchClientTest {
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private OpenAiBatchClient client;
+    private final AtomicReference<String> uploaded = new AtomicReference<>();
+    private final AtomicReference<String> created = new AtomicReference<>();
+    private final AtomicInteger polls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/files", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if ("POST".equals(exchange.getRequestMethod())) {
+                uploaded.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                respond(exchange, "{\"id\":\"file-in\",\"purpose\":\"batch\"}");
+            } else if (path.equals("/v1/files/file-out/content")) {
+                respond(exchange, "{\"id\":\"r1\",\"custom_id\":\"b-0\",\"response\":{\"status_code\":200,\"body\":"
+                        + "{\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"{\\\"patient\\\":{}}\"}}]}},\"error\":null}\n"
+                        + "{\"id\":\"r2\",\"custom_id\":\"b-1\",\"response\":{\"status_code\":400,\"body\":"
+                        + "{\"error\":{\"message\":\"image too large\"}}},\"error\":null}\n");
+            } else if (path.equals("/v1/files/file-err/content")) {
+                respond(exchange, "{\"id\":\"r3\",\"custom_id\":\"b-2\",\"response\":null,"
+                        + "\"error\":{\"code\":\"batch_expired\",\"message\":\"request expired\"}}\n");
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        });
+        server.createContext("/v1/batches", exchange -> {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                created.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                respond(exchange, "{\"id\":\"batch_1\",\"status\":\"validating\"}");
+            } else if (polls.incrementAndGet() < 3) {
+                respond(exchange, "{\"id\":\"batch_1\",\"status\":\"in_progress\"}");
+            } else {
+                respond(exchange, "{\"id\":\"batch_1\",\"status\":\"completed\","
+                        + "\"output_file_id\":\"file-out\",\"error_file_id\":\"file-err\"}");
+            }
+        });
+        server.start();
+
+        UploadSpool spool = new UploadSpool();
+        ReflectionTestUtils.setField(spool, "spoolDir", dir.toString());
+        spool.init();
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v1")
+                .build();
+        client = new OpenAiBatchClient(webClient, spool, new PipelineMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(client, "openAiApiKey", "test");
+        ReflectionTestUtils.setField(client, "pollInterval", Duration.ofMillis(20));
+        ReflectionTestUtils.setField(client, "completionWindow", "24h");
+        ReflectionTestUtils.setField(client, "maxWait", Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void uploadsJsonlPollsAndParsesResultsByCustomId() throws IOException {
+        Map<String, ChatCompletionRequest> requests = new LinkedHashMap<>();
+        for (int i = 0; i < 4; i++) {
+            requests.put("b-" + i, new ChatCompletionRequest("gpt-4o-mini", 2000)
+                    .system("extract")
+                    .user("report " + i));
+        }
+
+        OpenAiBatchClient.Results results = client.execute(Flux.fromIterable(requests.entrySet())).block(Duration.ofSeconds(10));
+
+        assertTrue(uploaded.get().contains("name=\"purpose\""));
+        assertTrue(uploaded.get().contains("{\"custom_id\":\"b-3\",\"method\":\"POST\",\"url\":\"/v1/chat/completions\","
+                + "\"body\":{\"model\":\"gpt-4o-mini\",\"max_tokens\":2000,"));
+        assertTrue(created.get().contains("\"input_file_id\":\"file-in\""));
+        assertEquals(3, polls.get());
+
+        assertEquals(Map.of("b-0", "{\"patient\":{}}"), results.contents());
+        assertEquals("http_400: image too large", results.errors().get("b-1"));
+        assertEquals("request expired", results.errors().get("b-2"));
+        assertEquals("no result (batch completed)", results.errors().get("b-3"));
+        try (var leftovers = Files.list(dir)) {
+            assertEquals(0, leftovers.count());
+        }
+    }
+
+    @Test
+    void writesEachRequestBeforeTheNextIsBuiltAndSkipsEmptyBatches() throws IOException {
+        Path input = Files.createTempFile(dir, "batch-", ".jsonl");
+        List<Long> sizeWhenBuilt = new ArrayList<>();
+        Flux<Map.Entry<String, ChatCompletionRequest>> requests = Flux.range(0, 3).map(i -> {
+            try {
+                sizeWhenBuilt.add(Files.size(input));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return Map.entry("b-" + i, new ChatCompletionRequest("gpt-4o-mini", 2000).user("report " + i));
+        });
+
+        assertEquals(Set.of("b-0", "b-1", "b-2"), client.writeInput(input, requests).block(Duration.ofSeconds(10)));
+        assertEquals(0L, sizeWhenBuilt.get(0));
+        assertTrue(sizeWhenBuilt.get(1) > 0 && sizeWhenBuilt.get(2) > sizeWhenBuilt.get(1));
+        assertEquals(3, Files.readAllLines(input).size());
+
+        OpenAiBatchClient.Results empty = client.execute(Flux.empty()).block(Duration.ofSeconds(10));
+        assertTrue(empty.contents().isEmpty() && empty.errors().isEmpty());
+        assertNull(uploaded.get());
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
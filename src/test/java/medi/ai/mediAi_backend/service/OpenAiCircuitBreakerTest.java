@@ -0,0 +1,89 @@
+package medi.ai.mediAi_backend.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAiCircuitBreakerTest {
+
+    @Test
+    void opensAtFailureRateAndClosesAfterSuccessfulTrial() throws Exception {
+        OpenAiCircuitBreaker breaker = new OpenAiCircuitBreaker(0.5, 4, 10, Duration.ofMillis(50));
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onSuccess();
+        }
+        assertTrue(breaker.tryAcquire());
+        breaker.onError(new TimeoutException());
+        assertEquals(OpenAiCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        breaker.onError(new OpenAiApiException(503, null, "unavailable"));
+        assertEquals(OpenAiCircuitBreaker.State.OPEN, breaker.getState());
+
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejected());
+
+        Thread.sleep(80);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(OpenAiCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // only one trial call at a time
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(OpenAiCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void failedTrialReopensAndClientErrorsDoNotCount() throws Exception {
+        OpenAiCircuitBreaker breaker = new OpenAiCircuitBreaker(0.5, 2, 10, Duration.ofMillis(50));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onError(new OpenAiApiException(400, null, "bad request"));
+        }
+        assertEquals(OpenAiCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onError(new TimeoutException());
+        breaker.onError(new TimeoutException());
+        assertEquals(OpenAiCircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(80);
+        assertTrue(breaker.tryAcquire());
+        breaker.onError(new OpenAiApiException(500, null, "server error"));
+        assertEquals(OpenAiCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void callsThatTimeOutInTheLocalQueueDoNotOpenTheCircuit() {
+        OpenAiCircuitBreaker breaker = new OpenAiCircuitBreaker(0.5, 2, 10, Duration.ofSeconds(30));
+        OpenAiScheduler scheduler = new OpenAiScheduler(6000, 10_000_000, 10, 1, 1, 32, 0.5, 0);
+        Sinks.One<String> gate = Sinks.one();
+        // occupy the only slot so the guarded calls never leave the queue
+        scheduler.schedule(1, () -> gate.asMono().flux()).subscribe();
+
+        for (int i = 0; i < 4; i++) {
+            Flux<String> queued = OpenAiService.guarded(breaker, scheduler, "findings", Duration.ofMillis(50), 1,
+                    () -> Flux.just("never sent"));
+            RuntimeException error = assertThrows(RuntimeException.class, () -> queued.blockLast(Duration.ofSeconds(5)));
+            assertTrue(error.getCause() instanceof QueueTimeoutException, String.valueOf(error.getCause()));
+        }
+        assertEquals(OpenAiCircuitBreaker.State.CLOSED, breaker.getState());
+        gate.tryEmitValue("done");
+
+        // a dispatched call that outlives its deadline still counts against the upstream
+        for (int i = 0; i < 2; i++) {
+            Flux<String> hanging = OpenAiService.guarded(breaker, scheduler, "findings", Duration.ofMillis(50), 1,
+                    Flux::never);
+            RuntimeException error = assertThrows(RuntimeException.class, () -> hanging.blockLast(Duration.ofSeconds(5)));
+            assertEquals(TimeoutException.class, error.getCause().getClass());
+        }
+        assertEquals(OpenAiCircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,129 @@
+package medi.ai.mediAi_backend.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenAiSchedulerTest {
+
+    private static OpenAiScheduler scheduler(int concurrency, int maxRetries) {
+        return new OpenAiScheduler(6000, 10_000_000, 10, concurrency, 1, 32, 0.5, maxRetries);
+    }
+
+    @Test
+    void interactiveWorkJumpsAheadOfQueuedBulkWork() {
+        OpenAiScheduler scheduler = scheduler(1, 0);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Sinks.One<String> gate = Sinks.one();
+
+        // occupy the only slot so everything else queues
+        Mono<String> blocker = scheduler.schedule(1, () -> gate.asMono().flux()).singleOrEmpty();
+        Mono<String> bulk1 = scheduler.schedule(1, () -> Flux.just("bulk1")).doOnNext(order::add).singleOrEmpty()
+                .contextWrite(OpenAiScheduler.withPriority(OpenAiScheduler.Priority.BULK));
+        Mono<String> bulk2 = scheduler.schedule(1, () -> Flux.just("bulk2")).doOnNext(order::add).singleOrEmpty()
+                .contextWrite(OpenAiScheduler.withPriority(OpenAiScheduler.Priority.BULK));
+        Mono<String> interactive = scheduler.schedule(1, () -> Flux.just("interactive")).doOnNext(order::add).singleOrEmpty();
+
+        blocker.subscribe();
+        Mono<Void> all = Mono.when(bulk1, bulk2, interactive).cache();
+        all.subscribe();
+        assertEquals(3, scheduler.getQueued());
+
+        gate.tryEmitValue("done");
+        all.block(Duration.ofSeconds(5));
+        assertEquals(List.of("interactive", "bulk1", "bulk2"), order);
+    }
+
+    @Test
+    void overloadLowersLimitHonoursRetryAfterAndRetries() {
+        OpenAiScheduler scheduler = scheduler(8, 3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        long start = System.nanoTime();
+        String result = scheduler.<String>schedule(1, () -> attempts.incrementAndGet() == 1
+                        ? Flux.error(new OpenAiApiException(429, Duration.ofMillis(300), "slow down"))
+                        : Flux.just("ok"))
+                .singleOrEmpty()
+                .block(Duration.ofSeconds(5));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals("ok", result);
+        assertEquals(2, attempts.get());
+        assertTrue(elapsedMs >= 300, "should wait for Retry-After, waited " + elapsedMs + " ms");
+        // 8 * 0.5 after the 429, then +1/limit for the success
+        assertEquals(4.25, scheduler.getConcurrencyLimit(), 1e-9);
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    void cancelDuringRetryBackoffDoesNotReleaseTheSlotTwice() throws Exception {
+        // the 503 halves the limit to 2
+        OpenAiScheduler scheduler = scheduler(4, 3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // no Retry-After: the retry waits for the jittered backoff (>= 1.5 s)
+        Disposable call = scheduler.<String>schedule(1, () -> {
+            attempts.incrementAndGet();
+            return Flux.error(new OpenAiApiException(503, null, "unavailable"));
+        }).subscribe(value -> { }, error -> { });
+        assertEquals(1, attempts.get());
+        assertEquals(0, scheduler.getInFlight());
+
+        call.dispose();
+        assertEquals(0, scheduler.getInFlight());
+
+        // the task is skipped when the backoff ends, and both slots are still usable
+        Thread.sleep(3000);
+        assertEquals(1, attempts.get());
+        assertEquals(0, scheduler.getInFlight());
+        assertEquals(0, scheduler.getQueued());
+        Sinks.One<String> gate = Sinks.one();
+        Mono<String> first = scheduler.schedule(1, () -> gate.asMono().flux()).singleOrEmpty().cache();
+        Mono<String> second = scheduler.schedule(1, () -> gate.asMono().flux()).singleOrEmpty().cache();
+        Mono<String> third = scheduler.schedule(1, () -> Flux.just("third")).singleOrEmpty().cache();
+        first.subscribe();
+        second.subscribe();
+        third.subscribe();
+        assertEquals(2, scheduler.getInFlight());
+        assertEquals(1, scheduler.getQueued());
+        gate.tryEmitValue("done");
+        assertEquals("third", third.block(Duration.ofSeconds(5)));
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    void clientErrorsAreNotRetried() {
+        OpenAiScheduler scheduler = scheduler(4, 3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        OpenAiApiException error = assertThrows(OpenAiApiException.class, () -> scheduler.<String>schedule(1, () -> {
+            attempts.incrementAndGet();
+            return Flux.error(new OpenAiApiException(400, null, "bad request"));
+        }).singleOrEmpty().block(Duration.ofSeconds(5)));
+
+        assertEquals(400, error.getStatusCode());
+        assertEquals(1, attempts.get());
+        assertEquals(4.0, scheduler.getConcurrencyLimit());
+    }
+
+    @Test
+    void requestBucketSpacesOutCalls() {
+        // 600 rpm with a 1 second burst -> 10 immediately, then one every 100 ms
+        OpenAiScheduler scheduler = new OpenAiScheduler(600, 10_000_000, 1, 32, 1, 32, 0.5, 0);
+        long start = System.nanoTime();
+        Flux.range(0, 13)
+                .flatMap(i -> scheduler.schedule(1, () -> Flux.just(i)))
+                .blockLast(Duration.ofSeconds(5));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs >= 250, "3 calls beyond the burst need ~300 ms, took " + elapsedMs);
+    }
+}
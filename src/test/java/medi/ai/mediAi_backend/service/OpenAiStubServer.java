@@ -0,0 +1,235 @@
+package medi.ai.mediAi_backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the OpenAI /chat/completions endpoint, for tests and load runs
+ * that must not spend API quota. Point app.openai.base-url at {@link #baseUrl()}.
+ * <ul>
+ *   <li>latency: log-normal around a median (sigma 0 = fixed), per request</li>
+ *   <li>fault injection: a fraction of requests (and/or the first N) answered with 429 or 5xx</li>
+ *   <li>canned responses: extraction, or findings when the request asks for a response_format</li>
+ *   <li>stream=true requests are answered as SSE chunks followed by a usage chunk and [DONE]</li>
+ * </ul>
+ */
+public class OpenAiStubServer implements AutoCloseable {
+
+    public static final String EXTRACTION = "{\"patient\":{\"name\":\"Test Patient\",\"age\":\"54\",\"gender\":\"female\",\"report_date\":\"2024-01-02\"},"
+            + "\"test_summary\":{\"Hemoglobin\":[\"10.1\",\"g/dL\",\"12-15\"],"
+            + "\"Lipid Profile\":{\"LDL\":[\"180\",\"mg/dL\",\"<100\"],\"HDL\":[\"55\",\"mg/dL\",\">40\"]},"
+            + "\"Fasting Glucose\":[\"92\",\"mg/dL\",\"70-100\"]}}";
+    public static final String FINDINGS = "{\"overall_finding\":[\"Hemoglobin is low.\",\"LDL cholesterol is high.\"]}";
+
+    private static final int STREAM_CHUNK_CHARS = 40;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "openai-stub");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Duration medianLatency = Duration.ZERO;
+    private volatile double latencySigma;
+    private volatile double rateLimitRatio;
+    private volatile double serverErrorRatio;
+    private final AtomicInteger failFirst = new AtomicInteger();
+    private volatile int failFirstStatus = 429;
+    private volatile Duration retryAfter = Duration.ofMillis(200);
+    private volatile String extractionResponse = EXTRACTION;
+    private volatile String findingsResponse = FINDINGS;
+
+    private final LongAdder requests = new LongAdder();
+    private final Map<String, LongAdder> responses = new ConcurrentHashMap<>();
+
+    public OpenAiStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        server.createContext("/v1/chat/completions", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    /** Log-normal latency: half of the requests take less than the median; sigma 0.5 gives p99 ~3.2x the median. */
+    public OpenAiStubServer latency(Duration median, double sigma) {
+        this.medianLatency = median;
+        this.latencySigma = sigma;
+        return this;
+    }
+
+    /** Fractions of requests answered with 429 (rate limit) and 503 (overloaded). */
+    public OpenAiStubServer errors(double rateLimitRatio, double serverErrorRatio) {
+        this.rateLimitRatio = rateLimitRatio;
+        this.serverErrorRatio = serverErrorRatio;
+        return this;
+    }
+
+    /** The next {@code count} requests fail with the status, e.g. to test retries deterministically. */
+    public OpenAiStubServer failNext(int count, int status) {
+        this.failFirstStatus = status;
+        this.failFirst.set(count);
+        return this;
+    }
+
+    /** Sent as retry-after-ms with injected errors; null sends no hint (the client then backs off on its own). */
+    public OpenAiStubServer retryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    public OpenAiStubServer extractionResponse(String content) {
+        this.extractionResponse = content;
+        return this;
+    }
+
+    public OpenAiStubServer findingsResponse(String content) {
+        this.findingsResponse = content;
+        return this;
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    /** Responses sent so far, keyed by "extraction", "findings" or the injected status code. */
+    public long responses(String key) {
+        LongAdder count = responses.get(key);
+        return count == null ? 0 : count.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.increment();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            sleep(sampleLatency());
+
+            int status = injectedStatus();
+            if (status != 0) {
+                count(String.valueOf(status));
+                if (retryAfter != null) {
+                    exchange.getResponseHeaders().add("retry-after-ms", String.valueOf(retryAfter.toMillis()));
+                }
+                send(exchange, status, "application/json",
+                        "{\"error\":{\"message\":\"injected " + status + "\",\"type\":\"stub\"}}");
+                return;
+            }
+
+            // the compact findings call constrains its output with response_format
+            boolean findings = body.contains("\"response_format\"");
+            String content = findings ? findingsResponse : extractionResponse;
+            count(findings ? "findings" : "extraction");
+            int promptTokens = body.length() / 4;
+            int completionTokens = content.length() / 4;
+            if (body.contains("\"stream\":true")) {
+                stream(exchange, content, promptTokens, completionTokens);
+            } else {
+                send(exchange, 200, "application/json", completion(content, promptTokens, completionTokens));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String completion(String content, int promptTokens, int completionTokens) throws IOException {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("id", "chatcmpl-stub");
+        response.put("object", "chat.completion");
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", content);
+        choice.put("finish_reason", "stop");
+        response.set("usage", usage(promptTokens, completionTokens));
+        return mapper.writeValueAsString(response);
+    }
+
+    private void stream(HttpExchange exchange, String content, int promptTokens, int completionTokens) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int from = 0; from < content.length(); from += STREAM_CHUNK_CHARS) {
+            ObjectNode chunk = mapper.createObjectNode();
+            ObjectNode choice = chunk.putArray("choices").addObject();
+            choice.put("index", 0);
+            choice.putObject("delta").put("content", content.substring(from, Math.min(content.length(), from + STREAM_CHUNK_CHARS)));
+            event(out, mapper.writeValueAsString(chunk));
+        }
+        ObjectNode usage = mapper.createObjectNode();
+        usage.putArray("choices");
+        usage.set("usage", usage(promptTokens, completionTokens));
+        event(out, mapper.writeValueAsString(usage));
+        event(out, "[DONE]");
+    }
+
+    private ObjectNode usage(int promptTokens, int completionTokens) {
+        return mapper.createObjectNode()
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", completionTokens)
+                .put("total_tokens", promptTokens + completionTokens);
+    }
+
+    private static void event(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private int injectedStatus() {
+        if (failFirst.getAndUpdate(n -> Math.max(0, n - 1)) > 0) return failFirstStatus;
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < rateLimitRatio) return 429;
+        if (roll < rateLimitRatio + serverErrorRatio) return 503;
+        return 0;
+    }
+
+    private long sampleLatency() {
+        long median = medianLatency.toMillis();
+        if (median <= 0) return 0;
+        if (latencySigma <= 0) return median;
+        return (long) (median * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private void count(String key) {
+        responses.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
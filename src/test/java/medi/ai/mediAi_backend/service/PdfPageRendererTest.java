@@ -0,0 +1,219 @@
+package medi.ai.mediAi_backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfPageRendererTest {
+
+    private static final PdfPageRenderer.Settings STRIDES = RenderFixtures.render(72, PdfPageRenderer.Format.PNG, 3, false);
+
+    @Test
+    void digitalPagesUseTextLayerAndScannedPagesAreRendered() throws Exception {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument doc = new PDDocument()) {
+            for (int p = 0; p < 3; p++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                doc.addPage(page);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    if (p == 1) {
+                        // no text layer, like a scan
+                        cs.addRect(50, 300, 400, 400);
+                        cs.fill();
+                        continue;
+                    }
+                    cs.beginText();
+                    cs.setFont(PDType1Font.HELVETICA, 10);
+                    cs.newLineAtOffset(50, 780);
+                    for (int row = 0; row < 20; row++) {
+                        cs.showText("Test " + row + "      " + (10 + row) + "      mg/dL      5 - 40");
+                        cs.newLineAtOffset(0, -16);
+                    }
+                    cs.endText();
+                }
+            }
+            doc.save(pdf);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PdfPageRenderer renderer = RenderFixtures.renderer(executor, ImagePreprocessor.Settings.OFF,
+                    RenderFixtures.render(72, PdfPageRenderer.Format.PNG, 2, true));
+
+            List<RenderedPage> pages = renderer.render(new ReportUpload(pdf.toByteArray(), "application/pdf", "mixed.pdf"));
+
+            assertEquals(3, pages.size());
+            assertTrue(pages.get(0).isText());
+            assertTrue(pages.get(0).getText().startsWith("Test 0 | 10 | mg/dL | 5 - 40\nTest 1 |"));
+            assertFalse(pages.get(1).isText());
+            assertEquals("image/png", pages.get(1).getMimeType());
+            assertTrue(pages.get(1).getBytes().length > 0);
+            assertTrue(pages.get(2).isText());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void blankAndRepeatedPagesAreDroppedButSameTemplatePagesAreKept() throws Exception {
+        // pages: table A, blank separator, table A again, table B (same layout, other values)
+        String[] tables = {"A", null, "A", "B"};
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument doc = new PDDocument()) {
+            for (String table : tables) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                doc.addPage(page);
+                if (table == null) continue;
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    cs.beginText();
+                    cs.setFont(PDType1Font.HELVETICA, 10);
+                    cs.newLineAtOffset(50, 780);
+                    for (int row = 0; row < 40; row++) {
+                        int value = table.equals("A") ? 10 + row : 97 - row * 2;
+                        cs.showText("Test " + row + "      " + value + "      mg/dL      5 - 40");
+                        cs.newLineAtOffset(0, -16);
+                    }
+                    cs.endText();
+                }
+            }
+            doc.save(pdf);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PdfPageRenderer renderer = RenderFixtures.renderer(executor, RenderFixtures.PREPROCESS,
+                    RenderFixtures.render(72, PdfPageRenderer.Format.PNG, 2, false));
+
+            List<RenderedPage> pages = renderer.render(new ReportUpload(pdf.toByteArray(), "application/pdf", "dupes.pdf"));
+
+            assertEquals(List.of(0, 3), pages.stream().map(RenderedPage::getPageIndex).toList());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void aPageWithASingleResultRowIsNotBlank() throws Exception {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            doc.addPage(page);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                cs.beginText();
+                cs.setFont(PDType1Font.HELVETICA, 10);
+                cs.newLineAtOffset(50, 780);
+                cs.showText("HbA1c (Glycated Haemoglobin)      7.9      %      4.0 - 5.6");
+                cs.endText();
+            }
+            doc.addPage(new PDPage(PDRectangle.A4));
+            doc.save(pdf);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (boolean textLayer : new boolean[]{true, false}) {
+                PdfPageRenderer renderer = RenderFixtures.renderer(executor, RenderFixtures.PREPROCESS,
+                        RenderFixtures.render(72, PdfPageRenderer.Format.PNG, 2, textLayer));
+
+                List<RenderedPage> pages = renderer.render(new ReportUpload(pdf.toByteArray(), "application/pdf", "short.pdf"));
+
+                // too short for the text-layer path, so the row goes as an image; the empty page is dropped
+                assertEquals(List.of(0), pages.stream().map(RenderedPage::getPageIndex).toList());
+                assertFalse(pages.get(0).isText());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void allStridesRunOnTheRenderPoolAndPagesComeBackInOrder() throws Exception {
+        byte[] pdf = scannedPdf(7);
+        AtomicInteger submitted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        ExecutorService executor = new AbstractExecutorService() {
+            @Override public void execute(Runnable task) { submitted.incrementAndGet(); pool.execute(task); }
+            @Override public void shutdown() { pool.shutdown(); }
+            @Override public List<Runnable> shutdownNow() { return pool.shutdownNow(); }
+            @Override public boolean isShutdown() { return pool.isShutdown(); }
+            @Override public boolean isTerminated() { return pool.isTerminated(); }
+            @Override public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return pool.awaitTermination(timeout, unit);
+            }
+        };
+        try {
+            PdfPageRenderer renderer = RenderFixtures.renderer(executor, ImagePreprocessor.Settings.OFF, STRIDES);
+
+            List<RenderedPage> pages = renderer.render(new ReportUpload(pdf, "application/pdf", "scan.pdf"));
+
+            assertEquals(List.of(0, 1, 2, 3, 4, 5, 6), pages.stream().map(RenderedPage::getPageIndex).toList());
+            assertEquals(3, submitted.get()); // stride 0 included, nothing rendered on the caller's thread
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void aFailingStrideFailsTheRenderAndStopsTheOthers() throws Exception {
+        byte[] pdf = scannedPdf(9);
+        PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry());
+        AtomicInteger checked = new AtomicInteger();
+        ImagePreprocessor failing = new ImagePreprocessor(metrics, ImagePreprocessor.Settings.OFF) {
+            @Override
+            public boolean isBlank(BufferedImage image) {
+                if (checked.incrementAndGet() == 2) throw new UncheckedIOException(new IOException("broken page"));
+                return false;
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            PdfPageRenderer renderer = new PdfPageRenderer(executor, metrics, failing, STRIDES);
+
+            IOException e = assertThrows(IOException.class,
+                    () -> renderer.render(new ReportUpload(pdf, "application/pdf", "scan.pdf")));
+            assertEquals("broken page", e.getMessage());
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(checked.get() < 9, "strides kept rendering after the failure");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Pages without a text layer, each with a box at a different height. */
+    private static byte[] scannedPdf(int pageCount) throws IOException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument doc = new PDDocument()) {
+            for (int p = 0; p < pageCount; p++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                doc.addPage(page);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    cs.addRect(50, 50 + p * 70, 400, 60);
+                    cs.fill();
+                }
+            }
+            doc.save(pdf);
+        }
+        return pdf.toByteArray();
+    }
+}
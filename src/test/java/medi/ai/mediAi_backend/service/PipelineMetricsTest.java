@@ -0,0 +1,43 @@
+package medi.ai.mediAi_backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PipelineMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(registry);
+
+    @Test
+    void tokensAreSplitByKindAndAccumulate() {
+        metrics.tokens("extraction", "gpt-4o-mini", 1200, 300);
+        metrics.tokens("extraction", "gpt-4o-mini", 800, null);
+        metrics.tokens("findings", "gpt-4o-mini", 500, 100);
+
+        assertEquals(2000, registry.get("openai.tokens")
+                .tags("call_type", "extraction", "kind", "prompt").counter().count());
+        assertEquals(300, registry.get("openai.tokens")
+                .tags("call_type", "extraction", "kind", "completion").counter().count());
+        assertEquals(100, registry.get("openai.tokens")
+                .tags("call_type", "findings", "kind", "completion").counter().count());
+    }
+
+    @Test
+    void stagesAndFallbacksAreRecordedPerTag() {
+        metrics.recordStage("page_render", TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.recordStage("page_render", TimeUnit.MILLISECONDS.toNanos(60));
+        String result = metrics.timeStage("enrichment", () -> "ok");
+        metrics.fallback("findings");
+
+        assertEquals("ok", result);
+        assertEquals(2, registry.get("report.stage").tag("stage", "page_render").timer().count());
+        assertEquals(100, registry.get("report.stage").tag("stage", "page_render").timer()
+                .totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1, registry.get("report.stage").tag("stage", "enrichment").timer().count());
+        assertEquals(1, registry.get("report.fallbacks").tag("stage", "findings").counter().count());
+    }
+}
@@ -0,0 +1,25 @@
+package medi.ai.mediAi_backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.concurrent.ExecutorService;
+
+/** Renderer and preprocessor setups shared by the tests and the benchmarks. */
+public final class RenderFixtures {
+
+    /** The application.yml preprocessing defaults. */
+    public static final ImagePreprocessor.Settings PREPROCESS =
+            new ImagePreprocessor.Settings(true, 1600, true, true, 0.0001, true, 0.85f);
+
+    private RenderFixtures() { }
+
+    public static PdfPageRenderer.Settings render(float dpi, PdfPageRenderer.Format format, int parallelism, boolean textLayer) {
+        return new PdfPageRenderer.Settings(dpi, format, 0.8f, parallelism, new PdfPageRenderer.Settings.TextLayer(textLayer, 200));
+    }
+
+    public static PdfPageRenderer renderer(ExecutorService executor, ImagePreprocessor.Settings preprocess,
+                                           PdfPageRenderer.Settings render) {
+        PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry());
+        return new PdfPageRenderer(executor, metrics, new ImagePreprocessor(metrics, preprocess), render);
+    }
+}
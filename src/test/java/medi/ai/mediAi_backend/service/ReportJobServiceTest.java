@@ -0,0 +1,30 @@
+package medi.ai.mediAi_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReportJobServiceTest {
+
+    @Test
+    void aBatchTakesOnePermitPerFile() {
+        ReportJobService service = new ReportJobService(5);
+        ReflectionTestUtils.setField(service, "retention", Duration.ofMinutes(30));
+        Sinks.One<String> batchDone = Sinks.one();
+
+        service.submit("batch", "u1", "batch:b1", 4, batchDone::asMono);
+        assertEquals(4, service.getInFlight());
+        // a second batch of two does not fit next to it, a single upload does
+        assertThrows(JobRejectedException.class, () -> service.submit("batch-2", "u1", "batch:b2", 2, Sinks.<String>one()::asMono));
+        service.submit("u2", "scan.pdf", Sinks.<String>one()::asMono);
+        assertEquals(5, service.getInFlight());
+
+        batchDone.tryEmitValue("{}");
+        assertEquals(1, service.getInFlight());
+    }
+}
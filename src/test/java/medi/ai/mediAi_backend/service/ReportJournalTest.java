@@ -0,0 +1,97 @@
+package medi.ai.mediAi_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private ReportJournal journal() throws Exception {
+        UploadSpool spool = new UploadSpool();
+        ReflectionTestUtils.setField(spool, "spoolDir", dir.toString());
+        spool.init();
+        ReportJournal journal = new ReportJournal(spool);
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "fsync", false);
+        journal.init();
+        return journal;
+    }
+
+    @Test
+    void unfinishedJobsAreRecoveredWithTheirLastCheckpoint() throws Exception {
+        ReportJournal journal = journal();
+        UploadSpool spool = (UploadSpool) ReflectionTestUtils.getField(journal, "uploadSpool");
+        ReportUpload spooled = spool.spool(new MockMultipartFile("file", "scan.pdf", "application/pdf", new byte[]{1, 2, 3}));
+
+        ReportUpload first = journal.begin("job-a", "user-1", spooled);
+        ReportUpload second = journal.begin("job-b", "user-2", new ReportUpload(new byte[]{4, 5}, "image/png", "photo.png"));
+        ReportUpload third = journal.begin("job-c", "user-3", new ReportUpload(new byte[]{6}, "image/png", "other.png"));
+        assertFalse(Files.exists(spooled.getPath()));
+        assertTrue(Files.exists(first.getPath()));
+
+        String finalJson = "{\"patient\":{},\"test_summary\":{" + "\"Hemoglobin\":[\"13.5\",\"g/dL\",\"12-15\",\"Normal\"],".repeat(100) + "\"x\":1}}";
+        journal.checkpoint("job-a", ReportJournal.Stage.EXTRACTED, "{\"patient\":{}}");
+        journal.checkpoint("job-a", ReportJournal.Stage.FINAL, finalJson);
+        journal.end("job-b");
+        second.close();
+        journal.close();
+        // the large checkpoint is stored compressed
+        assertTrue(Files.size(dir.resolve("journal.log")) < finalJson.length() / 2);
+        Files.writeString(dir.resolve("job-orphan.bin"), "input of a job that was never journaled");
+        // simulate a crash: job-c's input is there but its journal record was cut off half-way
+        Files.writeString(dir.resolve("journal.log"), "{\"t\":\"checkpoint\",\"job\":\"job-c\",\"sta",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        List<ReportJournal.PendingJob> recovered = journal().takeRecovered();
+
+        assertEquals(2, recovered.size());
+        ReportJournal.PendingJob a = recovered.get(0);
+        assertEquals("job-a", a.jobId());
+        assertEquals("user-1", a.userId());
+        assertEquals("scan.pdf", a.filename());
+        assertEquals(ReportJournal.Stage.FINAL, a.stage());
+        assertEquals(finalJson, a.data());
+        assertEquals(first.getPath(), a.input());
+        assertTrue(Files.exists(a.input()));
+
+        ReportJournal.PendingJob c = recovered.get(1);
+        assertEquals("job-c", c.jobId());
+        assertNull(c.stage());
+        assertEquals(third.getPath(), c.input());
+
+        assertFalse(Files.exists(dir.resolve("job-orphan.bin")));
+        // compacted: one begin per open job plus job-a's checkpoint
+        assertEquals(3, Files.readAllLines(dir.resolve("journal.log")).size());
+    }
+
+    @Test
+    void checkpointsOfAnUnknownStageAreSkipped() throws Exception {
+        Path input = Files.writeString(dir.resolve("job-a.bin"), "scan");
+        Files.writeString(dir.resolve("journal.log"), String.join("\n",
+                "{\"t\":\"begin\",\"job\":\"job-a\",\"user\":\"user-1\",\"input\":\"" + input + "\",\"type\":\"application/pdf\",\"name\":\"scan.pdf\"}",
+                "{\"t\":\"checkpoint\",\"job\":\"job-a\",\"stage\":\"EXTRACTED\",\"data\":\"{}\"}",
+                "{\"t\":\"checkpoint\",\"job\":\"job-a\",\"stage\":\"SUMMARIZED\",\"data\":\"{\\\"x\\\":1}\"}",
+                ""));
+
+        List<ReportJournal.PendingJob> recovered = journal().takeRecovered();
+
+        assertEquals(1, recovered.size());
+        assertEquals(ReportJournal.Stage.EXTRACTED, recovered.get(0).stage());
+        assertEquals("{}", recovered.get(0).data());
+    }
+}
@@ -0,0 +1,122 @@
+package medi.ai.mediAi_backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class ReportResultStoreTest {
+
+    private ReportResultStore store(int maxEntries, Duration ttl) {
+        ReportResultStore store = new ReportResultStore();
+        ReflectionTestUtils.setField(store, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(store, "ttl", ttl);
+        ReflectionTestUtils.setField(store, "compressMinBytes", 64);
+        return store;
+    }
+
+    @Test
+    void keepsLatestStatePerUserCompressedAndBounded() {
+        ReportResultStore store = store(2, Duration.ofHours(1));
+        String big = "{\"test_summary\":{" + "\"Hemoglobin\":[\"13.5\",\"g/dL\",\"12-15\",\"Normal\"],".repeat(200) + "\"x\":1}}";
+
+        store.put("u1", "j1", ReportResultStore.Stage.PARTIAL, "{\"patient\":{}}");
+        store.put("u1", "j1", ReportResultStore.Stage.FINAL, big);
+        store.put("u2", "j2", ReportResultStore.Stage.ERROR, "{\"error\":\"processing_failed\"}");
+
+        ReportResultStore.Result result = store.get("u1", "j1").orElseThrow();
+        assertEquals(ReportResultStore.Stage.FINAL, result.stage());
+        assertEquals(big, result.json());
+        assertTrue(((byte[]) storedData(store, "u1/j1")).length < big.length() / 10);
+
+        store.put("u3", "j3", ReportResultStore.Stage.PARTIAL, "{}"); // u2 is the eldest
+        assertFalse(store.get("u2", "j2").isPresent());
+        assertTrue(store.get("u1", "j1").isPresent());
+    }
+
+    @Test
+    void expiredStatesAreNotReturned() {
+        ReportResultStore store = store(10, Duration.ZERO);
+        store.put("u1", null, ReportResultStore.Stage.FINAL, "{}");
+        assertFalse(store.get("u1", null).isPresent());
+        assertFalse(store.latest("u1").isPresent());
+    }
+
+    @Test
+    void jobsOfTheSameUserDoNotOverwriteEachOther() throws InterruptedException {
+        ReportResultStore store = store(10, Duration.ofHours(1));
+        store.put("u1", "a", ReportResultStore.Stage.FINAL, "{\"job\":\"a\"}");
+        Thread.sleep(5);
+        store.put("u1", "b", ReportResultStore.Stage.PARTIAL, "{\"job\":\"b\"}");
+
+        assertEquals(ReportResultStore.Stage.FINAL, store.get("u1", "a").orElseThrow().stage());
+        assertEquals(ReportResultStore.Stage.PARTIAL, store.get("u1", "b").orElseThrow().stage());
+        assertEquals("b", store.latest("u1").orElseThrow().jobId());
+        assertEquals(List.of("a", "b"), store.forUser("u1").stream().map(ReportResultStore.Result::jobId).toList());
+        assertFalse(store.get("u2", "a").isPresent());
+    }
+
+    @Test
+    void replayResendsEveryJobOfTheUser() {
+        ReportResultStore store = store(10, Duration.ofHours(1));
+        MessageChannel outbound = mock(MessageChannel.class);
+        ReportPublisher publisher = new ReportPublisher(mock(SimpMessagingTemplate.class), outbound, store,
+                new PipelineMetrics(new SimpleMeterRegistry()));
+        store.put("u1", "a", ReportResultStore.Stage.FINAL, "{}");
+        store.put("u1", "b", ReportResultStore.Stage.PARTIAL, "{}");
+        store.put("u2", "c", ReportResultStore.Stage.FINAL, "{}");
+
+        assertTrue(publisher.replay("u1", "session-1", "sub-0"));
+        verify(outbound, times(2)).send(any());
+    }
+
+    @Test
+    void replaySendsTheStoredStateToTheSubscribingSessionOnly() {
+        ReportResultStore store = store(10, Duration.ofHours(1));
+        SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+        MessageChannel outbound = mock(MessageChannel.class);
+        ReportPublisher publisher = new ReportPublisher(template, outbound, store, new PipelineMetrics(new SimpleMeterRegistry()));
+
+        assertFalse(publisher.replay("u1", "session-2", "sub-0"));
+        verifyNoInteractions(outbound);
+
+        store.put("u1", "j1", ReportResultStore.Stage.PARTIAL, "{\"patient\":{}}");
+        assertTrue(publisher.replay("u1", "session-2", "sub-0"));
+
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(outbound).send(sent.capture());
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(sent.getValue());
+        assertEquals(SimpMessageType.MESSAGE, headers.getMessageType());
+        assertEquals("session-2", headers.getSessionId());
+        assertEquals("sub-0", headers.getSubscriptionId());
+        assertEquals("/medicalReportTopic/u1", headers.getDestination());
+        assertEquals("{\"patient\":{}}", new String((byte[]) sent.getValue().getPayload(), StandardCharsets.UTF_8));
+        // nothing goes through the broker to the topic's other subscribers
+        verifyNoInteractions(template);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object storedData(ReportResultStore store, String key) {
+        Map<String, Object> entries = (Map<String, Object>) ReflectionTestUtils.getField(store, "entries");
+        return ReflectionTestUtils.invokeMethod(entries.get(key), "data");
+    }
+}
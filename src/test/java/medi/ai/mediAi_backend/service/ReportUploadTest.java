@@ -0,0 +1,49 @@
+package medi.ai.mediAi_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportUploadTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void spooledUploadMatchesInMemoryCopyAndIsDeletedOnClose() throws Exception {
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(content);
+        Files.writeString(dir.resolve("upload-stale.bin"), "left over from a crash");
+
+        UploadSpool spool = new UploadSpool();
+        ReflectionTestUtils.setField(spool, "spoolDir", dir.toString());
+        spool.init();
+        assertFalse(Files.exists(dir.resolve("upload-stale.bin")));
+
+        ReportUpload spooled = spool.spool(new MockMultipartFile("file", "scan.pdf", "application/pdf", content));
+        ReportUpload inMemory = new ReportUpload(content, "application/pdf", "scan.pdf");
+
+        assertTrue(Files.exists(spooled.getPath()));
+        assertNull(spooled.getBytes());
+        assertEquals(content.length, spooled.getSize());
+        assertEquals(inMemory.sha256(), spooled.sha256());
+        try (InputStream in = spooled.getInputStream()) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+
+        spooled.close();
+        assertFalse(Files.exists(spooled.getPath()));
+    }
+}
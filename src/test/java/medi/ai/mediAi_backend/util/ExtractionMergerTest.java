@@ -0,0 +1,61 @@
+package medi.ai.mediAi_backend.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtractionMergerTest {
+
+    private final ExtractionMerger merger = new ExtractionMerger();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void mergesPatientAndTestsInPageOrder() throws Exception {
+        String first = "```json{\"patient\":{\"name\":\"Asha\",\"age\":\"\",\"gender\":\"female\",\"report_date\":\"\"},"
+                + "\"test_summary\":{\"CBC\":{\"Hemoglobin\":[\"12.1\",\"g/dL\",\"13-17\"]},\"TSH\":[\"\",\"\",\"\"]}}```";
+        String second = "{\"patient\":{\"name\":\"\",\"age\":\"34\",\"gender\":\"\",\"report_date\":\"2024-01-02\"},"
+                + "\"test_summary\":{\"CBC\":{\"Hemoglobin\":[\"12.1\",\"g/dL\",\"13-17\"],\"WBC\":[\"7.1\",\"10^3/uL\",\"4-11\"]},"
+                + "\"TSH\":[\"2.3\",\"uIU/mL\",\"0.4-4.0\"],\"Glucose\":[\"92\",\"mg/dL\",\"70-99\"]}}";
+        String third = "{\"patient\":{},\"test_summary\":{\"Glucose\":[\"141\",\"mg/dL\",\"<140\"]}}";
+
+        JsonNode merged = mapper.readTree(merger.merge(List.of(first, second, third)));
+
+        JsonNode patient = merged.get("patient");
+        assertEquals("Asha", patient.get("name").asText());
+        assertEquals("34", patient.get("age").asText());
+        assertEquals("female", patient.get("gender").asText());
+        assertEquals("2024-01-02", patient.get("report_date").asText());
+
+        JsonNode ts = merged.get("test_summary");
+        assertEquals(2, ts.get("CBC").size());
+        assertEquals("2.3", ts.get("TSH").get(0).asText());
+        assertEquals("92", ts.get("Glucose").get(0).asText());
+        assertEquals("141", ts.get("Glucose (2)").get(0).asText());
+    }
+
+    @Test
+    void isDeterministicAndIdempotentForRepeats() {
+        String a = "{\"patient\":{\"name\":\"A\"},\"test_summary\":{\"X\":[\"1\",\"\",\"0-2\"]}}";
+        String b = "{\"patient\":{\"name\":\"B\"},\"test_summary\":{\"X\":[\"3\",\"\",\"0-2\"]}}";
+
+        String once = merger.merge(List.of(a, b));
+        assertEquals(once, merger.merge(List.of(a, b, b)));
+        assertTrue(once.contains("\"X (2)\""));
+    }
+
+    @Test
+    void rejectsAnyUnusableFragment() {
+        String ok = "{\"patient\":{\"name\":\"A\"},\"test_summary\":{}}";
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> merger.merge(List.of(ok, "not json", ok, "```json```")));
+        assertTrue(e.getMessage().contains("[1, 3]"));
+        assertThrows(IllegalArgumentException.class, () -> merger.merge(List.of()));
+        assertFalse(merger.isUsable("[1, 2]"));
+        assertTrue(merger.isUsable("```json" + ok + "```"));
+    }
+}
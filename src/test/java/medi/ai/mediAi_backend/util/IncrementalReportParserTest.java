@@ -0,0 +1,54 @@
+package medi.ai.mediAi_backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalReportParserTest {
+
+    private static final String DOC = "```json\n{\"patient\":{\"name\":\"Asha\",\"age\":\"34\",\"gender\":\"female\",\"report_date\":\"\"},"
+            + "\"test_summary\":{\"Hemoglobin\":[\"12.1\",\"g/dL\",\"13-17\"],"
+            + "\"Lipid Profile\":{\"LDL\":[\"160\",\"mg/dL\",\"<100\"],\"Ratios\":{\"TC/HDL\":[\"3.1\",\"\",\"<5\"]}}}}\n```";
+
+    @Test
+    void emitsEachPieceAsSoonAsItCompletes() {
+        IncrementalReportParser parser = new IncrementalReportParser();
+        List<IncrementalReportParser.Event> events = new ArrayList<>();
+        int hemoglobinEnd = DOC.indexOf("13-17\"]") + "13-17\"]".length();
+
+        // feed one character at a time, like a token stream
+        for (int i = 0; i < DOC.length(); i++) {
+            events.addAll(parser.feed(String.valueOf(DOC.charAt(i))));
+            if (i == hemoglobinEnd - 1) {
+                assertEquals(2, events.size(), "Hemoglobin must be reported right after its closing bracket");
+            }
+        }
+
+        assertTrue(parser.isComplete());
+        assertFalse(parser.isFailed());
+        assertEquals(DOC, parser.text());
+        assertEquals(4, events.size());
+
+        assertEquals(IncrementalReportParser.Kind.PATIENT, events.get(0).kind());
+        assertEquals("Asha", events.get(0).node().get("name").asText());
+
+        assertEquals(List.of("Hemoglobin"), events.get(1).path());
+        assertEquals(List.of("Lipid Profile", "LDL"), events.get(2).path());
+        assertEquals(List.of("Lipid Profile", "Ratios", "TC/HDL"), events.get(3).path());
+        assertEquals("<5", events.get(3).node().get(2).asText());
+    }
+
+    @Test
+    void keepsCollectingTextAfterInvalidJson() {
+        IncrementalReportParser parser = new IncrementalReportParser();
+        parser.feed("{\"test_summary\":{\"A\":[\"1\",\"\",\"0-2\"]");
+        assertTrue(parser.feed(" oops ").isEmpty());
+        parser.feed("tail");
+
+        assertTrue(parser.isFailed());
+        assertEquals("{\"test_summary\":{\"A\":[\"1\",\"\",\"0-2\"] oops tail", parser.text());
+    }
+}
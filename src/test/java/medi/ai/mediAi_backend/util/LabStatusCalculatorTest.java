@@ -0,0 +1,75 @@
+package medi.ai.mediAi_backend.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LabStatusCalculatorTest {
+
+    private final LabStatusCalculator calculator = new LabStatusCalculator();
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "12.5      | 13-17         | Low",
+            "13        | 13 - 17       | Normal",
+            "17.0      | 13–17         | Normal",
+            "17.1      | 13—17         | High",
+            "1,200     | 150-450       | High",
+            "4.5x10^3  | 4.0-11.0x10^3 | Normal",
+            "1.2 x10^3 | 4000-11000    | Low",
+            "-3        | -5-5          | Normal",
+            "5         | <5            | High",
+            "5         | <=5           | Normal",
+            "5         | ≤ 4.9         | High",
+            "40        | >40           | Low",
+            "40        | >=40          | Normal",
+            "39        | ≥40           | Low",
+            "2.1E-3    | <0.01         | Normal",
+            "7.2 (H)   | 4.5-6.5       | High",
+            "5         | <abc          | Normal",
+            "Positive  | Negative      | High",
+            "Non-Reactive | Non Reactive | Normal",
+            "Not Detected | Not Detected | Normal",
+            "Detected  | <1            | High",
+            "Yellow    | Pale yellow   | ''",
+            "12        | ''            | ''",
+            "12.5      | M: 13-17, F: 12-15 | ''",
+            "12.5      | 13-17 (M), 12-15 (F) | ''",
+            "16        | Male 13-17    | ''",
+            "30        | Adult: <40    | ''",
+            "5         | 1-3; 4-6      | ''",
+            "1,500     | 1,200-4,500   | Normal",
+    })
+    void computesStatus(String value, String ref, String expected) {
+        assertEquals(expected, calculator.computeStatus(value, ref));
+    }
+
+    @Test
+    void enrichesNestedGroupsAndLeavesOtherNodesAlone() throws Exception {
+        String json = "{\"patient\":{\"name\":\"A\"},\"test_summary\":{"
+                + "\"Hemoglobin\":[\"12.1\",\"g/dL\",\"13-17\"],"
+                + "\"Lipid Profile\":{\"LDL\":[\"160\",\"mg/dL\",\"<100\"],"
+                + "\"Ratios\":{\"TC/HDL\":[\"3.1\",\"\",\"<5\",\"stale\"]}},"
+                + "\"Short\":[\"1\"]}}";
+
+        JsonNode out = new ObjectMapper().readTree(calculator.addStatuses(json));
+        JsonNode ts = out.get("test_summary");
+
+        assertEquals("Low", ts.get("Hemoglobin").get(3).asText());
+        assertEquals("High", ts.get("Lipid Profile").get("LDL").get(3).asText());
+        assertEquals("Normal", ts.get("Lipid Profile").get("Ratios").get("TC/HDL").get(3).asText());
+        assertEquals(4, ts.get("Lipid Profile").get("Ratios").get("TC/HDL").size());
+        assertEquals(1, ts.get("Short").size());
+        assertEquals("A", out.get("patient").get("name").asText());
+    }
+
+    @Test
+    void returnsInputWithoutTestSummary() throws Exception {
+        String json = "{\"patient\":{}}";
+        assertEquals(json, calculator.addStatuses(json));
+    }
+}
@@ -0,0 +1,33 @@
+package medi.ai.mediAi_backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LatencyWindowTest {
+
+    @Test
+    void percentileNeedsMinimumSamples() {
+        LatencyWindow window = new LatencyWindow(10);
+        window.record(Duration.ofMillis(100).toNanos());
+        assertNull(window.percentile(0.95, 2));
+        window.record(Duration.ofMillis(200).toNanos());
+        assertEquals(Duration.ofMillis(200), window.percentile(0.95, 2));
+        assertEquals(Duration.ofMillis(100), window.percentile(0.5, 2));
+    }
+
+    @Test
+    void oldSamplesLeaveTheWindow() {
+        LatencyWindow window = new LatencyWindow(4);
+        for (int i = 1; i <= 100; i++) {
+            window.record(Duration.ofSeconds(i).toNanos());
+        }
+        assertEquals(4, window.size());
+        // only 97..100 s are left
+        assertEquals(Duration.ofSeconds(97), window.percentile(0.01, 1));
+        assertEquals(Duration.ofSeconds(100), window.percentile(1.0, 1));
+    }
+}
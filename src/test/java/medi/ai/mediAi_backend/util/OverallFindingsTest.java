@@ -0,0 +1,83 @@
+package medi.ai.mediAi_backend.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OverallFindingsTest {
+
+    private static final String REPORT = """
+            {"patient":{"name":"A","age":"54","gender":"F","report_date":"2024-01-02"},
+             "test_summary":{
+               "Hemoglobin":["10.1","g/dL","12-15","Low"],
+               "Lipid Profile":{
+                 "LDL":["180","mg/dL","<100","High"],
+                 "HDL":["55","mg/dL",">40","Normal"]},
+               "Urine Sugar":["Absent","","Absent","Normal"],
+               "Remarks":["see note","","",""]}}""";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final OverallFindings findings = new OverallFindings();
+
+    @Test
+    void compactInputKeepsOnlyAbnormalTestsWithGroupPaths() throws Exception {
+        JsonNode compact = mapper.readTree(findings.compactInput(REPORT));
+
+        assertEquals("54", compact.at("/patient/age").asText());
+        JsonNode abnormal = compact.get("abnormal_tests");
+        assertEquals(2, abnormal.size());
+        assertEquals("Low", abnormal.at("/Hemoglobin/3").asText());
+        assertEquals("180", abnormal.get("Lipid Profile / LDL").get(0).asText());
+        assertEquals(3, compact.get("normal_test_count").asInt());
+    }
+
+    @Test
+    void mergeInsertsFindingsAfterPatientAndLeavesTestsUntouched() throws Exception {
+        String merged = findings.merge(REPORT, "{\"overall_finding\":[\"One\",\" Two \",\"\"]}");
+        JsonNode root = mapper.readTree(merged);
+
+        List<String> keys = new ArrayList<>();
+        root.fieldNames().forEachRemaining(keys::add);
+        assertEquals(List.of("patient", "overall_finding", "test_summary"), keys);
+        assertEquals(2, root.get("overall_finding").size());
+        assertEquals("Two", root.at("/overall_finding/1").asText());
+        assertEquals(mapper.readTree(REPORT).get("test_summary"), root.get("test_summary"));
+    }
+
+    @Test
+    void mergeReplacesExistingFindingsAndAcceptsBareArray() throws Exception {
+        String withOld = "{\"overall_finding\":[\"old\"],\"patient\":{},\"test_summary\":{}}";
+        JsonNode root = mapper.readTree(findings.merge(withOld, "[\"new\"]"));
+
+        assertEquals("new", root.at("/overall_finding/0").asText());
+        assertEquals("patient", root.fieldNames().next());
+        assertFalse(root.toString().contains("old"));
+    }
+
+    @Test
+    void signatureIgnoresValuesNamesAndOrder() throws Exception {
+        String other = """
+                {"patient":{"name":"B","age":"47 Years","gender":"Female"},
+                 "test_summary":{
+                   "Lipid  Profile":{"LDL":["210","mg/dL","<100","High"]},
+                   "hemoglobin":["9.0","g/dL","12-15","Low"],
+                   "Glucose":["90","mg/dL","70-100","Normal"]}}""";
+
+        assertEquals("f|40-59|hemoglobin=Low;lipid profile / ldl=High", findings.signature(REPORT));
+        assertEquals(findings.signature(REPORT), findings.signature(other));
+        assertEquals("u|0-17|", findings.signature("{\"patient\":{\"age\":\"8 months\"},\"test_summary\":{}}"));
+    }
+
+    @Test
+    void mergeRejectsOutputWithoutFindings() {
+        assertThrows(IllegalArgumentException.class, () -> findings.merge(REPORT, "{\"overall_finding\":[]}"));
+        assertThrows(IllegalArgumentException.class, () -> findings.merge(REPORT, "{\"summary\":\"x\"}"));
+    }
+}
@@ -0,0 +1,62 @@
+package medi.ai.mediAi_backend.util;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageTextExtractorTest {
+
+    /** Each cell is drawn separately at its column's x offset, as report generators do. */
+    static void drawRow(PDPageContentStream cs, float y, String... cells) throws IOException {
+        float[] columns = {50, 220, 300, 380};
+        for (int i = 0; i < cells.length; i++) {
+            cs.beginText();
+            cs.setFont(PDType1Font.HELVETICA, 10);
+            cs.newLineAtOffset(columns[i], y);
+            cs.showText(cells[i]);
+            cs.endText();
+        }
+    }
+
+    @Test
+    void keepsTableRowsTogetherWithColumnSeparators() throws Exception {
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            doc.addPage(page);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                // drawn out of order on purpose; rows must still come out top to bottom
+                drawRow(cs, 700, "Platelet Count", "1.2", "lakh/uL", "1.5 - 4.1");
+                drawRow(cs, 720, "Hemoglobin", "13.5", "g/dL", "12 - 15");
+                cs.beginText();
+                cs.setFont(PDType1Font.HELVETICA, 10);
+                cs.newLineAtOffset(50, 680);
+                cs.showText("Vitamin D      18      ng/mL");
+                cs.endText();
+            }
+
+            String text = new PageTextExtractor().extract(doc, 0);
+
+            assertEquals("""
+                    Hemoglobin | 13.5 | g/dL | 12 - 15
+                    Platelet Count | 1.2 | lakh/uL | 1.5 - 4.1
+                    Vitamin D | 18 | ng/mL""", text);
+        }
+    }
+
+    @Test
+    void textRichRequiresEnoughReadableCharacters() {
+        assertTrue(PageTextExtractor.isTextRich("Hemoglobin | 13.5 | g/dL | 12 - 15", 20));
+        assertFalse(PageTextExtractor.isTextRich("Page 1", 20));
+        assertFalse(PageTextExtractor.isTextRich("��� ab �����".repeat(10), 20));
+        assertFalse(PageTextExtractor.isTextRich("", 1));
+    }
+}